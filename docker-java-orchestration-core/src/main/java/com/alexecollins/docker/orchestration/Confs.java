@@ -2,15 +2,14 @@ package com.alexecollins.docker.orchestration;
 
 import com.alexecollins.docker.orchestration.model.Conf;
 import com.alexecollins.docker.orchestration.model.Id;
-import com.alexecollins.docker.orchestration.util.PropertiesTokenResolver;
+import com.alexecollins.docker.orchestration.util.CompiledTokenResolver;
+import com.alexecollins.docker.orchestration.util.TextFiles;
 import com.alexecollins.docker.orchestration.util.TokenReplacingReader;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.type.MapLikeType;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.LinkedHashMap;
@@ -21,12 +20,16 @@ class Confs {
 
     private static final ObjectMapper MAPPER = new ObjectMapper(new YAMLFactory());
 
-    static Reader replacingReader(File confFile, Properties properties) throws FileNotFoundException {
-        return new TokenReplacingReader(new FileReader(confFile), new PropertiesTokenResolver(properties));
+    static Reader replacingReader(File confFile, CompiledTokenResolver resolver, TextFiles textFiles) throws IOException {
+        return new TokenReplacingReader(textFiles.reader(confFile), resolver);
     }
 
     static Map<Id, Conf> read(File dockerConf, Properties properties) throws IOException {
+        return read(dockerConf, new CompiledTokenResolver(properties), TextFiles.UTF_8);
+    }
+
+    static Map<Id, Conf> read(File dockerConf, CompiledTokenResolver resolver, TextFiles textFiles) throws IOException {
         MapLikeType mapLikeType = MAPPER.getTypeFactory().constructMapType(LinkedHashMap.class, Id.class, Conf.class);
-        return MAPPER.readValue(replacingReader(dockerConf, properties), mapLikeType);
+        return MAPPER.readValue(replacingReader(dockerConf, resolver, textFiles), mapLikeType);
     }
 }
@@ -0,0 +1,27 @@
+package com.alexecollins.docker.orchestration;
+
+import java.io.Closeable;
+
+/**
+ * A stream of container events, e.g. from the Docker events API.
+ */
+interface ContainerEventSource {
+
+    /**
+     * @return Closed to stop receiving events.
+     */
+    Closeable subscribe(Listener listener);
+
+    interface Listener {
+        /**
+         * @param containerId The id of the container the event is for.
+         * @param status      The event, e.g. "create", "start", "die" or "destroy".
+         */
+        void onEvent(String containerId, String status);
+
+        /**
+         * Called if the stream fails, no more events will be received.
+         */
+        void onError(Throwable throwable);
+    }
+}
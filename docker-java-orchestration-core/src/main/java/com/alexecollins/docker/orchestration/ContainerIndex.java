@@ -0,0 +1,95 @@
+package com.alexecollins.docker.orchestration;
+
+import com.alexecollins.docker.orchestration.model.Id;
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.model.Container;
+import com.github.dockerjava.api.model.Filters;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A snapshot of the containers on the daemon, indexed by image name and container name, so that looking up the
+ * containers for an id does not list every container on the daemon again.
+ */
+class ContainerIndex {
+    private final Map<String, List<Integer>> byId = new HashMap<>();
+    private final Map<String, List<Integer>> byImage = new HashMap<>();
+    private final Map<String, List<Integer>> byName = new HashMap<>();
+    private final List<Container> containers;
+    private final Set<String> running = new HashSet<>();
+
+    /**
+     * @param containers Every container, running or not.
+     */
+    ContainerIndex(List<Container> containers) {
+        this.containers = containers;
+        for (int i = 0; i < containers.size(); i++) {
+            final Container container = containers.get(i);
+            if (container.getLabels() != null && container.getLabels().containsKey(Labels.ID)) {
+                add(byId, container.getLabels().get(Labels.ID), i);
+            }
+            add(byImage, container.getImage(), i);
+            if (container.getNames() != null) {
+                for (String name : container.getNames()) {
+                    add(byName, name, i);
+                }
+            }
+            // the status of a running container is e.g. "Up 5 minutes", or "Up 5 minutes (Paused)"
+            if (container.getStatus() != null && container.getStatus().startsWith("Up")) {
+                running.add(container.getId());
+            }
+        }
+    }
+
+    /**
+     * @param filter Passed to the daemon, so only the containers that match it are listed.
+     */
+    static ContainerIndex load(DockerClient docker, Filters filter) {
+        return new ContainerIndex(docker.listContainersCmd().withShowAll(true).withFilters(filter).exec());
+    }
+
+    private static void add(Map<String, List<Integer>> index, String key, int position) {
+        if (!index.containsKey(key)) {
+            index.put(key, new ArrayList<Integer>());
+        }
+        index.get(key).add(position);
+    }
+
+    /**
+     * @return The containers with either the id label, the image name or the container name, in the order the
+     * daemon listed them.
+     */
+    List<Container> find(Id id, String imageName, String containerName, boolean allContainers) {
+        final TreeMap<Integer, Container> matches = new TreeMap<>();
+        collect(byId.get(id.toString()), matches, allContainers);
+        collect(byImage.get(imageName), matches, allContainers);
+        collect(byName.get(containerName), matches, allContainers);
+        return new ArrayList<>(matches.values());
+    }
+
+    private void collect(List<Integer> positions, Map<Integer, Container> matches, boolean allContainers) {
+        if (positions == null) {
+            return;
+        }
+        for (Integer position : positions) {
+            final Container container = containers.get(position);
+            if (allContainers || isRunning(container.getId())) {
+                matches.put(position, container);
+            }
+        }
+    }
+
+    List<Container> containers() {
+        return containers;
+    }
+
+    boolean isRunning(String containerId) {
+        return running.contains(containerId);
+    }
+}
@@ -0,0 +1,133 @@
+package com.alexecollins.docker.orchestration;
+
+import com.github.dockerjava.api.model.Container;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The state of this project's containers, kept up to date from container events, so it is known whether a
+ * container is running without asking the daemon.
+ * <p/>
+ * Only containers that were listed when the cache was seeded, or that the orchestrator created, are tracked. Events
+ * received before the cache is seeded are held back, and applied once it is, as they may be newer than the listing.
+ */
+class ContainerStateCache implements ContainerEventSource.Listener {
+
+    enum State {
+        CREATED, RUNNING, DIED, REMOVED
+    }
+
+    /**
+     * Id (as a string) to container id.
+     */
+    private final Map<String, String> containerIds = new ConcurrentHashMap<>();
+    private final Map<String, State> states = new ConcurrentHashMap<>();
+    private volatile boolean live = true;
+    /**
+     * Events received before the cache was seeded, or null once it has been.
+     */
+    private List<String[]> pending = new ArrayList<>();
+
+    /**
+     * @param index This project's containers, listed just after subscribing.
+     */
+    synchronized void seed(ContainerIndex index) {
+        for (Container container : index.containers()) {
+            final Map<String, String> labels = container.getLabels();
+            if (labels == null || !labels.containsKey(Labels.ID)) {
+                continue;
+            }
+            final boolean running = index.isRunning(container.getId());
+            final String id = labels.get(Labels.ID);
+            if (running || !containerIds.containsKey(id)) {
+                containerIds.put(id, container.getId());
+            }
+            states.put(container.getId(), running ? State.RUNNING : State.DIED);
+        }
+        for (String[] event : pending) {
+            apply(event[0], event[1]);
+        }
+        pending = null;
+    }
+
+    /**
+     * Start tracking a container the orchestrator has just created.
+     */
+    void created(String id, String containerId) {
+        containerIds.put(id, containerId);
+        states.put(containerId, State.CREATED);
+    }
+
+    /**
+     * Record a change the orchestrator has made itself, rather than wait for the event.
+     */
+    void changed(String containerId, State state) {
+        if (states.containsKey(containerId)) {
+            states.put(containerId, state);
+        }
+    }
+
+    /**
+     * @return Null if not known, e.g. if the event stream failed.
+     */
+    Boolean isRunning(String id) {
+        if (!live) {
+            return null;
+        }
+        final String containerId = containerIds.get(id);
+        if (containerId == null) {
+            return null;
+        }
+        final State state = states.get(containerId);
+        return state == null ? null : state == State.RUNNING;
+    }
+
+    /**
+     * @return True if the container was listed when the cache was seeded, or created by the orchestrator since.
+     */
+    boolean isTracked(String containerId) {
+        return containerId != null && states.containsKey(containerId);
+    }
+
+    boolean isLive() {
+        return live;
+    }
+
+    @Override
+    public synchronized void onEvent(String containerId, String status) {
+        if (pending != null) {
+            pending.add(new String[]{containerId, status});
+            return;
+        }
+        apply(containerId, status);
+    }
+
+    private void apply(String containerId, String status) {
+        if (containerId == null || !states.containsKey(containerId)) {
+            return;
+        }
+        switch (status) {
+            case "start":
+            case "restart":
+                states.put(containerId, State.RUNNING);
+                break;
+            case "die":
+            case "stop":
+                states.put(containerId, State.DIED);
+                break;
+            case "destroy":
+                states.put(containerId, State.REMOVED);
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        live = false;
+    }
+}
@@ -0,0 +1,105 @@
+package com.alexecollins.docker.orchestration;
+
+import com.alexecollins.docker.orchestration.model.BuildFlag;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A hash of a prepared build context, i.e. the relative path, permissions and content of every file in it, and the
+ * build flags.
+ * If the hash is the same as the one on the last image built, then building again would make the same image.
+ */
+final class ContextHash {
+
+    private ContextHash() {
+    }
+
+    /**
+     * @return The hash, or null if the context is not a directory.
+     */
+    static String of(File dir, Set<BuildFlag> buildFlags) throws IOException {
+        if (!dir.isDirectory()) {
+            return null;
+        }
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        final List<String> flags = new ArrayList<>();
+        for (BuildFlag flag : buildFlags) {
+            flags.add(flag.name());
+        }
+        Collections.sort(flags);
+        update(digest, flags.toString());
+
+        final byte[] buffer = new byte[64 * 1024];
+        for (String path : paths(dir)) {
+            update(digest, path);
+            update(digest, mode(new File(dir, path)));
+            try (InputStream in = new FileInputStream(new File(dir, path))) {
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, n);
+                }
+            }
+        }
+        return Labels.hex(digest.digest());
+    }
+
+    /**
+     * @return The POSIX permissions, e.g. "rwxr-xr-x", or where the file system has none, whether it is executable.
+     */
+    private static String mode(File file) throws IOException {
+        try {
+            return PosixFilePermissions.toString(Files.getPosixFilePermissions(file.toPath()));
+        } catch (UnsupportedOperationException e) {
+            return file.canExecute() ? "x" : "-";
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        // so "ab" + "c" is not the same as "a" + "bc"
+        digest.update((byte) 0);
+    }
+
+    /**
+     * @return The relative path of every file, sorted, using "/" on every OS.
+     */
+    static List<String> paths(File dir) {
+        final List<String> paths = new ArrayList<>();
+        addPaths(dir, "", paths);
+        Collections.sort(paths);
+        return paths;
+    }
+
+    private static void addPaths(File dir, String prefix, List<String> paths) {
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.isDirectory()) {
+                addPaths(file, prefix + file.getName() + "/", paths);
+            } else {
+                paths.add(prefix + file.getName());
+            }
+        }
+    }
+}
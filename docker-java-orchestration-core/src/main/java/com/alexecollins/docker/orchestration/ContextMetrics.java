@@ -0,0 +1,132 @@
+package com.alexecollins.docker.orchestration;
+
+import com.alexecollins.docker.orchestration.model.Id;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * The size and make up of a build context, and how long it took to prepare and send.
+ */
+public class ContextMetrics {
+    private static final int LARGEST_FILES = 5;
+    private static final Comparator<Map.Entry<String, Long>> BY_SIZE = new Comparator<Map.Entry<String, Long>>() {
+        @Override
+        public int compare(Map.Entry<String, Long> o1, Map.Entry<String, Long> o2) {
+            return Long.compare(o1.getValue(), o2.getValue());
+        }
+    };
+
+    private final Id id;
+    /**
+     * smallest first, so the smallest can be dropped
+     */
+    private final PriorityQueue<Map.Entry<String, Long>> largestFiles = new PriorityQueue<>(LARGEST_FILES + 1, BY_SIZE);
+    private long totalBytes;
+    private int fileCount;
+    private long filteredBytes;
+    private int filterSkippedFiles;
+    private long copyMillis;
+    private long filterMillis;
+    private long uploadMillis;
+
+    ContextMetrics(Id id) {
+        this.id = id;
+    }
+
+    synchronized void file(String path, long size) {
+        fileCount++;
+        totalBytes += size;
+        largestFiles.add(new AbstractMap.SimpleImmutableEntry<>(path, size));
+        if (largestFiles.size() > LARGEST_FILES) {
+            largestFiles.remove();
+        }
+    }
+
+    synchronized void filtered(long bytes, long millis) {
+        filteredBytes += bytes;
+        filterMillis += millis;
+    }
+
+    synchronized void filterSkipped(int files) {
+        filterSkippedFiles += files;
+    }
+
+    synchronized void copied(long millis) {
+        copyMillis += millis;
+    }
+
+    synchronized void uploaded(long millis) {
+        uploadMillis = millis;
+    }
+
+    public Id getId() {
+        return id;
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public synchronized int getFileCount() {
+        return fileCount;
+    }
+
+    /**
+     * @return The path and size of the largest files, largest first.
+     */
+    public synchronized Map<String, Long> getLargestFiles() {
+        final List<Map.Entry<String, Long>> files = new ArrayList<>(largestFiles);
+        Collections.sort(files, Collections.reverseOrder(BY_SIZE));
+        final Map<String, Long> out = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> file : files) {
+            out.put(file.getKey(), file.getValue());
+        }
+        return out;
+    }
+
+    /**
+     * @return The size of the files that had tokens replaced, before replacement.
+     */
+    public synchronized long getFilteredBytes() {
+        return filteredBytes;
+    }
+
+    /**
+     * @return The number of files that could have been filtered, but were left as they were, as they had no tokens
+     * that could be replaced.
+     */
+    public synchronized int getFilterSkippedFiles() {
+        return filterSkippedFiles;
+    }
+
+    public synchronized long getCopyMillis() {
+        return copyMillis;
+    }
+
+    public synchronized long getFilterMillis() {
+        return filterMillis;
+    }
+
+    /**
+     * @return Time taken to send the context to Docker. When the context is streamed, this includes reading and
+     * filtering the files, as that happens at the same time.
+     */
+    public synchronized long getUploadMillis() {
+        return uploadMillis;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return id + ": " + fileCount + " file(s), " + totalBytes + " byte(s), " + filteredBytes + " byte(s) filtered, "
+                + filterSkippedFiles + " file(s) without tokens, "
+                + "copy " + copyMillis + " ms, filter " + filterMillis + " ms, upload " + uploadMillis + " ms, "
+                + "largest " + getLargestFiles();
+    }
+}
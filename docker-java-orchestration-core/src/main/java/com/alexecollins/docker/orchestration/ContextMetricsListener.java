@@ -0,0 +1,18 @@
+package com.alexecollins.docker.orchestration;
+
+/**
+ * Receives the metrics of each build context, after it has been sent to Docker.
+ */
+public interface ContextMetricsListener {
+
+    ContextMetricsListener NONE = new ContextMetricsListener() {
+        @Override
+        public void onContext(ContextMetrics metrics) {
+        }
+    };
+
+    /**
+     * @param metrics Not null.
+     */
+    void onContext(ContextMetrics metrics);
+}
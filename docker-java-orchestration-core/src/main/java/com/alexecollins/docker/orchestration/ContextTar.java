@@ -0,0 +1,169 @@
+package com.alexecollins.docker.orchestration;
+
+import com.alexecollins.docker.orchestration.model.Conf;
+import com.alexecollins.docker.orchestration.model.Id;
+import com.alexecollins.docker.orchestration.model.Item;
+import com.alexecollins.docker.orchestration.util.CompiledTokenResolver;
+import com.alexecollins.docker.orchestration.util.Filters;
+import com.alexecollins.docker.orchestration.util.TextFiles;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.Arrays;
+
+import static java.lang.System.currentTimeMillis;
+import static org.apache.commons.io.FileUtils.copyFile;
+
+/**
+ * Writes a build context as a tar straight from the Dockerfile folder and packaged files, filtering text files as it
+ * goes, so the context is not copied to the work directory first.
+ */
+class ContextTar {
+    private static final int PIPE_SIZE = 64 * 1024;
+    private static final int FILE_MODE = 0100644;
+    private static final int EXECUTABLE_FILE_MODE = 0100755;
+
+    private final File rootDir;
+    private final FileFilter filter;
+    private final CompiledTokenResolver resolver;
+    private final TextFiles textFiles;
+
+    ContextTar(File rootDir, FileFilter filter, CompiledTokenResolver resolver, TextFiles textFiles) {
+        this.rootDir = rootDir;
+        this.filter = filter;
+        this.resolver = resolver;
+        this.textFiles = textFiles;
+    }
+
+    /**
+     * @return The tar, written on another thread as it is read. If writing fails, reading it fails.
+     */
+    InputStream stream(Id id, final File dockerFolder, final Conf conf, final ContextMetrics metrics) throws IOException {
+        final Pipe in = new Pipe();
+        final PipedOutputStream pipe = new PipedOutputStream(in);
+        final Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final TarArchiveOutputStream out = new TarArchiveOutputStream(pipe);
+                try {
+                    write(out, dockerFolder, conf, metrics);
+                } catch (IOException | RuntimeException e) {
+                    in.failure = e;
+                } finally {
+                    try {
+                        out.close();
+                    } catch (IOException e) {
+                        // the failure, if any, has already been recorded
+                    } finally {
+                        // closing the tar fails if an entry is still open, so the pipe must be closed here, or the
+                        // reader never sees the end of the stream, nor the failure
+                        try {
+                            pipe.close();
+                        } catch (IOException e) {
+                            // already closed by the tar
+                        }
+                    }
+                }
+            }
+        }, "context-" + id);
+        writer.setDaemon(true);
+        writer.start();
+        return in;
+    }
+
+    private void write(TarArchiveOutputStream out, File dockerFolder, Conf conf, ContextMetrics metrics) throws IOException {
+        final long start = currentTimeMillis();
+        out.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+        out.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+        final DockerIgnore ignore = DockerIgnore.of(dockerFolder);
+        addChildren(out, dockerFolder, "", true, ignore, metrics);
+        for (Item item : conf.getPackaging().getAdd()) {
+            File fileEntry = new File(rootDir, item.getPath());
+            add(out, fileEntry, fileEntry.getName(), item.shouldFilter(), ignore, metrics);
+        }
+        out.finish();
+        metrics.copied(currentTimeMillis() - start - metrics.getFilterMillis());
+    }
+
+    private void add(TarArchiveOutputStream out, File file, String name, boolean filterText, DockerIgnore ignore, ContextMetrics metrics) throws IOException {
+        if (ignore.isIgnored(name)) {
+            return;
+        }
+        if (file.isDirectory()) {
+            final TarArchiveEntry entry = new TarArchiveEntry(name + "/");
+            entry.setModTime(file.lastModified());
+            out.putArchiveEntry(entry);
+            out.closeArchiveEntry();
+            addChildren(out, file, name + "/", filterText, ignore, metrics);
+            return;
+        }
+        final TarArchiveEntry entry = new TarArchiveEntry(name);
+        entry.setModTime(file.lastModified());
+        entry.setMode(file.canExecute() ? EXECUTABLE_FILE_MODE : FILE_MODE);
+        if (filterText && filter.accept(file)) {
+            // the size must be known before the entry is written
+            final long start = currentTimeMillis();
+            final String text = textFiles.read(file);
+            final String filteredText = Filters.filter(text, resolver);
+            if (filteredText.equals(text)) {
+                metrics.filtered(0, currentTimeMillis() - start);
+                metrics.filterSkipped(1);
+            } else {
+                metrics.filtered(file.length(), currentTimeMillis() - start);
+            }
+            final byte[] filtered = filteredText.getBytes(textFiles.getCharset());
+            metrics.file(name, filtered.length);
+            entry.setSize(filtered.length);
+            out.putArchiveEntry(entry);
+            out.write(filtered);
+        } else {
+            entry.setSize(file.length());
+            metrics.file(name, file.length());
+            out.putArchiveEntry(entry);
+            copyFile(file, out);
+        }
+        out.closeArchiveEntry();
+    }
+
+    private void addChildren(TarArchiveOutputStream out, File dir, String prefix, boolean filterText, DockerIgnore ignore, ContextMetrics metrics) throws IOException {
+        final File[] children = dir.listFiles();
+        if (children == null) {
+            throw new IOException("cannot list " + dir);
+        }
+        Arrays.sort(children);
+        for (File child : children) {
+            add(out, child, prefix + child.getName(), filterText, ignore, metrics);
+        }
+    }
+
+    private static class Pipe extends PipedInputStream {
+        private volatile Throwable failure;
+
+        Pipe() {
+            super(PIPE_SIZE);
+        }
+
+        @Override
+        public synchronized int read() throws IOException {
+            return checkFailure(super.read());
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) throws IOException {
+            return checkFailure(super.read(b, off, len));
+        }
+
+        private int checkFailure(int n) throws IOException {
+            if (n == -1 && failure != null) {
+                throw new IOException("failed to write build context", failure);
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.alexecollins.docker.orchestration;
+
+import com.alexecollins.docker.orchestration.model.Id;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * The links between ids, sorted once, so the orders and levels can be read as often as needed.
+ * <p/>
+ * The order is the same as taking, in passes over the ids in the order they were declared, each id whose links have
+ * all been taken, but takes linear time rather than a pass per link.
+ */
+final class DependencyGraph {
+    private final Map<Id, List<Id>> links;
+    private final Map<Id, List<Id>> dependents;
+    private final List<Id> ids;
+    private final List<Id> reversedIds;
+    private final List<List<Id>> levels;
+    private final List<List<Id>> reversedLevels;
+
+    private DependencyGraph(Map<Id, List<Id>> links, Map<Id, List<Id>> dependents, List<Id> ids, List<List<Id>> levels) {
+        this.links = links;
+        this.dependents = dependents;
+        this.ids = Collections.unmodifiableList(ids);
+        this.reversedIds = Collections.unmodifiableList(reverse(ids));
+        this.levels = Collections.unmodifiableList(levels);
+        this.reversedLevels = Collections.unmodifiableList(reverse(levels));
+    }
+
+    /**
+     * @param links The ids each id links to, in the order the ids were declared.
+     * @throws IllegalStateException If the links are circular, or an id links to one that is not in the graph.
+     */
+    static DependencyGraph of(Map<Id, List<Id>> links) {
+        final Map<Id, Integer> index = new HashMap<>();
+        final Map<Id, List<Id>> dependents = new HashMap<>();
+        for (Id id : links.keySet()) {
+            index.put(id, index.size());
+            dependents.put(id, new ArrayList<Id>());
+        }
+
+        // Kahn's algorithm, for a topological order and to find cycles and unknown links
+        final Map<Id, Integer> unresolved = new HashMap<>();
+        final Queue<Id> ready = new ArrayDeque<>();
+        for (Map.Entry<Id, List<Id>> entry : links.entrySet()) {
+            int n = 0;
+            for (Id link : entry.getValue()) {
+                final List<Id> linkDependents = dependents.get(link);
+                if (linkDependents != null) {
+                    linkDependents.add(entry.getKey());
+                }
+                n++;
+            }
+            unresolved.put(entry.getKey(), n);
+            if (n == 0) {
+                ready.add(entry.getKey());
+            }
+        }
+        final List<Id> topological = new ArrayList<>(links.size());
+        while (!ready.isEmpty()) {
+            final Id id = ready.remove();
+            topological.add(id);
+            for (Id dependent : dependents.get(id)) {
+                final int n = unresolved.get(dependent) - 1;
+                unresolved.put(dependent, n);
+                if (n == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        if (topological.size() < links.size()) {
+            final List<Id> remaining = new ArrayList<>();
+            for (Id id : links.keySet()) {
+                if (unresolved.get(id) > 0) {
+                    remaining.add(id);
+                }
+            }
+            throw new IllegalStateException("dependency error (e.g. circular dependency) amongst " + remaining);
+        }
+
+        // an id is taken in the same pass as a link declared before it, or the pass after one declared after it
+        final Map<Id, Integer> passes = new HashMap<>();
+        final Map<Id, Integer> depths = new HashMap<>();
+        final List<List<Id>> byPass = new ArrayList<>();
+        for (Id id : topological) {
+            int pass = 0;
+            int depth = 0;
+            for (Id link : links.get(id)) {
+                pass = Math.max(pass, passes.get(link) + (index.get(link) < index.get(id) ? 0 : 1));
+                depth = Math.max(depth, depths.get(link) + 1);
+            }
+            passes.put(id, pass);
+            depths.put(id, depth);
+            while (byPass.size() <= pass) {
+                byPass.add(new ArrayList<Id>());
+            }
+        }
+        for (Id id : links.keySet()) {
+            byPass.get(passes.get(id)).add(id);
+        }
+        final List<Id> ids = new ArrayList<>(links.size());
+        for (List<Id> pass : byPass) {
+            ids.addAll(pass);
+        }
+
+        final List<List<Id>> levels = new ArrayList<>();
+        for (Id id : ids) {
+            final int depth = depths.get(id);
+            while (levels.size() <= depth) {
+                levels.add(new ArrayList<Id>());
+            }
+            levels.get(depth).add(id);
+        }
+        for (int i = 0; i < levels.size(); i++) {
+            levels.set(i, Collections.unmodifiableList(levels.get(i)));
+        }
+
+        final Map<Id, List<Id>> readOnlyLinks = new HashMap<>();
+        final Map<Id, List<Id>> readOnlyDependents = new HashMap<>();
+        for (Id id : links.keySet()) {
+            readOnlyLinks.put(id, Collections.unmodifiableList(new ArrayList<>(links.get(id))));
+            readOnlyDependents.put(id, Collections.unmodifiableList(dependents.get(id)));
+        }
+        return new DependencyGraph(readOnlyLinks, readOnlyDependents, ids, levels);
+    }
+
+    private static <T> List<T> reverse(List<T> list) {
+        final List<T> out = new ArrayList<>(list);
+        Collections.reverse(out);
+        return out;
+    }
+
+    /**
+     * @return Every id, each after the ids it links to, or before them if reversed.
+     */
+    List<Id> ids(boolean reverse) {
+        return reverse ? reversedIds : ids;
+    }
+
+    /**
+     * @return The ids in levels, where each id only links to ids in earlier levels, so all the ids in a level can be
+     * acted on at the same time. If reversed, each id is in a level before the ids it links to.
+     */
+    List<List<Id>> levels(boolean reverse) {
+        return reverse ? reversedLevels : levels;
+    }
+
+    /**
+     * @return The ids the id links to, or null if it is not in the graph.
+     */
+    List<Id> links(Id id) {
+        return links.get(id);
+    }
+
+    /**
+     * @return The ids that link to the id, or null if it is not in the graph.
+     */
+    List<Id> dependents(Id id) {
+        return dependents.get(id);
+    }
+}
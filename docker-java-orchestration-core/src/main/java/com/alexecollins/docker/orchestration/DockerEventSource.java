@@ -0,0 +1,71 @@
+package com.alexecollins.docker.orchestration;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.EventCallback;
+import com.github.dockerjava.api.model.Event;
+
+import java.io.Closeable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Container events from the Docker events API.
+ */
+class DockerEventSource implements ContainerEventSource {
+    private final DockerClient docker;
+
+    DockerEventSource(DockerClient docker) {
+        if (docker == null) {
+            throw new IllegalArgumentException("docker is null");
+        }
+        this.docker = docker;
+    }
+
+    @Override
+    public Closeable subscribe(final Listener listener) {
+        final Subscription subscription = new Subscription(listener);
+        subscription.executor = docker.eventsCmd(subscription).exec();
+        return subscription;
+    }
+
+    private static class Subscription implements EventCallback, Closeable {
+        private final Listener listener;
+        private volatile boolean receiving = true;
+        private ExecutorService executor;
+
+        Subscription(Listener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onEvent(Event event) {
+            listener.onEvent(event.getId(), event.getStatus());
+        }
+
+        @Override
+        public void onException(Throwable throwable) {
+            receiving = false;
+            listener.onError(throwable);
+        }
+
+        @Override
+        public void onCompletion(int numEvents) {
+            if (receiving) {
+                receiving = false;
+                listener.onError(new IllegalStateException("event stream ended after " + numEvents + " events"));
+            }
+        }
+
+        @Override
+        public boolean isReceiving() {
+            return receiving;
+        }
+
+        @Override
+        public void close() {
+            receiving = false;
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+}
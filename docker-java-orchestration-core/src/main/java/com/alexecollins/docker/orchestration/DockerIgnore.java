@@ -0,0 +1,126 @@
+package com.alexecollins.docker.orchestration;
+
+import com.github.dockerjava.core.GoLangFileMatch;
+import com.github.dockerjava.core.GoLangFileMatchException;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The patterns in a .dockerignore file, so files Docker would ignore are not copied, filtered or sent.
+ * <p/>
+ * A pattern starting with "!" re-includes files, and the last pattern to match wins. A file in an ignored directory
+ * is ignored, as the directory is never read.
+ */
+final class DockerIgnore {
+    static final DockerIgnore NONE = new DockerIgnore(Collections.<String>emptyList());
+
+    private final List<Rule> rules = new ArrayList<>();
+
+    DockerIgnore(List<String> patterns) {
+        for (String pattern : patterns) {
+            final boolean exclusion = pattern.startsWith("!");
+            final String glob = clean(exclusion ? pattern.substring(1) : pattern);
+            if (glob != null) {
+                rules.add(new Rule(glob, exclusion, pattern));
+            }
+        }
+    }
+
+    /**
+     * Like Go's filepath.Clean, as Docker uses, so "dir/" matches the directory, and relative to the context root.
+     *
+     * @return Null if the pattern is outside the context.
+     */
+    private static String clean(String pattern) {
+        String glob = FilenameUtils.normalize(pattern, true);
+        if (glob == null) {
+            return null;
+        }
+        while (glob.length() > 1 && glob.endsWith("/")) {
+            glob = glob.substring(0, glob.length() - 1);
+        }
+        return glob.startsWith("/") ? glob.substring(1) : glob;
+    }
+
+    /**
+     * @return The patterns from the .dockerignore file in the folder, or none if there is no such file.
+     */
+    static DockerIgnore of(File dockerFolder) throws IOException {
+        final File file = new File(dockerFolder, ".dockerignore");
+        if (!file.isFile()) {
+            return NONE;
+        }
+        final List<String> patterns = new ArrayList<>();
+        for (String line : FileUtils.readLines(file, StandardCharsets.UTF_8.name())) {
+            final String pattern = line.trim();
+            if (!pattern.isEmpty() && !pattern.startsWith("#")) {
+                patterns.add(pattern);
+            }
+        }
+        return new DockerIgnore(patterns);
+    }
+
+    /**
+     * @param path Relative to the root of the context, using "/".
+     */
+    boolean isIgnored(String path) {
+        if (rules.isEmpty() || path.isEmpty() || path.equals("Dockerfile") || path.equals(".dockerignore")) {
+            return false;
+        }
+        boolean ignored = false;
+        for (Rule rule : rules) {
+            try {
+                if (GoLangFileMatch.match(rule.glob, path)) {
+                    ignored = !rule.exclusion;
+                }
+            } catch (GoLangFileMatchException e) {
+                throw new OrchestrationException("invalid pattern '" + rule.pattern + "' in .dockerignore");
+            }
+        }
+        return ignored;
+    }
+
+    /**
+     * @return True if the file, within the context root, is ignored.
+     */
+    boolean isIgnored(File root, File file) {
+        return isIgnored(relativePath(root, file));
+    }
+
+    /**
+     * @param prefix The path of the root within the context, e.g. "" or "dir/".
+     * @return A filter that accepts files under the root that are not ignored.
+     */
+    FileFilter filter(final File root, final String prefix) {
+        return new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return !isIgnored(prefix + relativePath(root, file));
+            }
+        };
+    }
+
+    private static String relativePath(File root, File file) {
+        return root.toPath().relativize(file.toPath()).toString().replace(File.separatorChar, '/');
+    }
+
+    private static class Rule {
+        private final String glob;
+        private final boolean exclusion;
+        private final String pattern;
+
+        Rule(String glob, boolean exclusion, String pattern) {
+            this.glob = glob;
+            this.exclusion = exclusion;
+            this.pattern = pattern;
+        }
+    }
+}
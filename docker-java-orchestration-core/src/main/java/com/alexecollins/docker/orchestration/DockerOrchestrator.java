@@ -8,8 +8,10 @@ import com.alexecollins.docker.orchestration.model.HealthChecks;
 import com.alexecollins.docker.orchestration.model.Id;
 import com.alexecollins.docker.orchestration.model.Ping;
 import com.alexecollins.docker.orchestration.plugin.api.Plugin;
+import com.alexecollins.docker.orchestration.util.CompiledTokenResolver;
 import com.alexecollins.docker.orchestration.util.Logs;
 import com.alexecollins.docker.orchestration.util.Pinger;
+import com.alexecollins.docker.orchestration.util.TextFiles;
 import com.github.dockerjava.api.DockerClient;
 import com.github.dockerjava.api.DockerException;
 import com.github.dockerjava.api.InternalServerErrorException;
@@ -17,12 +19,12 @@ import com.github.dockerjava.api.NotFoundException;
 import com.github.dockerjava.api.command.BuildImageCmd;
 import com.github.dockerjava.api.command.CreateContainerCmd;
 import com.github.dockerjava.api.command.InspectContainerResponse;
+import com.github.dockerjava.api.command.InspectImageResponse;
 import com.github.dockerjava.api.command.LogContainerCmd;
 import com.github.dockerjava.api.command.PushImageCmd;
 import com.github.dockerjava.api.model.Bind;
 import com.github.dockerjava.api.model.Container;
 import com.github.dockerjava.api.model.ExposedPort;
-import com.github.dockerjava.api.model.Image;
 import com.github.dockerjava.api.model.InternetProtocol;
 import com.github.dockerjava.api.model.Link;
 import com.github.dockerjava.api.model.PortBinding;
@@ -31,18 +33,22 @@ import com.github.dockerjava.api.model.Volume;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -50,12 +56,12 @@ import java.util.Properties;
 import java.util.ServiceLoader;
 import java.util.Set;
 
-import static java.util.Arrays.asList;
+import static java.lang.System.currentTimeMillis;
 
 /**
  * Orchestrates multiple Docker containers based on
  */
-public class DockerOrchestrator {
+public class DockerOrchestrator implements Closeable {
     /**
      * @deprecated This will be removed in a future release.
      */
@@ -80,6 +86,33 @@ public class DockerOrchestrator {
     private final DockerfileValidator dockerfileValidator;
     private final DefinitionFilter definitionFilter;
     private final boolean permissionErrorTolerant;
+    private final ParallelRunner parallelRunner;
+    private final ParallelRunner buildRunner;
+    private final PipelineScheduler pipelineScheduler;
+    /**
+     * The containers as they were when last listed, null if they need listing again.
+     */
+    private ContainerIndex containerIndex;
+    /**
+     * The containers without labels, as they were when last listed, null if they need listing again.
+     */
+    private ContainerIndex unlabelledContainerIndex;
+    /**
+     * The images as they were when last listed, null if they need listing again.
+     */
+    private ImageIndex imageIndex;
+    /**
+     * Null if not watching container events.
+     */
+    private final ContainerEventSource eventSource;
+    private ContainerStateCache stateCache;
+    private Closeable subscription;
+    private final ProgressListener progressListener;
+    private final ContextMetricsListener contextMetricsListener;
+    /**
+     * null if not keeping a journal
+     */
+    private final Journal journal;
 
     /**
      * @deprecated Please use builder from now on.
@@ -95,10 +128,14 @@ public class DockerOrchestrator {
      */
     @Deprecated
     public DockerOrchestrator(DockerClient docker, File src, File workDir, File rootDir, String user, String project, FileFilter filter, Properties properties, Set<BuildFlag> buildFlags) {
+        this(docker, src, workDir, rootDir, user, project, filter, new CompiledTokenResolver(properties), buildFlags);
+    }
+
+    private DockerOrchestrator(DockerClient docker, File src, File workDir, File rootDir, String user, String project, FileFilter filter, CompiledTokenResolver resolver, Set<BuildFlag> buildFlags) {
         this(
                 docker,
-                new Repo(user, project, src, properties),
-                new FileOrchestrator(workDir, rootDir, filter, properties),
+                new Repo(user, project, src, resolver),
+                new FileOrchestrator(workDir, rootDir, filter, resolver, false, false, false, 1, TextFiles.UTF_8),
                 buildFlags,
                 DEFAULT_LOGGER,
                 new DockerfileValidator(),
@@ -107,6 +144,10 @@ public class DockerOrchestrator {
     }
 
     DockerOrchestrator(DockerClient docker, Repo repo, FileOrchestrator fileOrchestrator, Set<BuildFlag> buildFlags, Logger logger, DockerfileValidator dockerfileValidator, DefinitionFilter definitionFilter, boolean permissionErrorTolerant) {
+        this(docker, repo, fileOrchestrator, buildFlags, logger, dockerfileValidator, definitionFilter, permissionErrorTolerant, 1, 1, false, null, ProgressListener.NONE, ContextMetricsListener.NONE, null);
+    }
+
+    DockerOrchestrator(DockerClient docker, Repo repo, FileOrchestrator fileOrchestrator, Set<BuildFlag> buildFlags, Logger logger, DockerfileValidator dockerfileValidator, DefinitionFilter definitionFilter, boolean permissionErrorTolerant, int concurrency, int buildConcurrency, boolean pipelined, ContainerEventSource eventSource, ProgressListener progressListener, ContextMetricsListener contextMetricsListener, Journal journal) {
         if (docker == null) {
             throw new IllegalArgumentException("docker is null");
         }
@@ -125,6 +166,12 @@ public class DockerOrchestrator {
         if (definitionFilter == null) {
             throw new IllegalArgumentException("definitionFilter is null");
         }
+        if (progressListener == null) {
+            throw new IllegalArgumentException("progressListener is null");
+        }
+        if (contextMetricsListener == null) {
+            throw new IllegalArgumentException("contextMetricsListener is null");
+        }
 
         this.docker = docker;
         this.repo = repo;
@@ -134,6 +181,13 @@ public class DockerOrchestrator {
         this.dockerfileValidator = dockerfileValidator;
         this.definitionFilter = definitionFilter;
         this.permissionErrorTolerant = permissionErrorTolerant;
+        this.parallelRunner = new ParallelRunner(concurrency);
+        this.buildRunner = new ParallelRunner(buildConcurrency);
+        this.pipelineScheduler = pipelined ? new PipelineScheduler(buildConcurrency, concurrency, logger) : null;
+        this.eventSource = eventSource;
+        this.progressListener = progressListener;
+        this.contextMetricsListener = contextMetricsListener;
+        this.journal = journal;
 
         for (Plugin plugin : ServiceLoader.load(Plugin.class)) {
             plugins.add(plugin);
@@ -150,6 +204,12 @@ public class DockerOrchestrator {
     }
 
     public void clean() {
+        containersChanged();
+        imagesChanged();
+        if (isParallel()) {
+            cleanInParallel();
+            return;
+        }
         for (Id id : repo.ids(true)) {
             if (!inclusive(id)) {
                 continue;
@@ -172,7 +232,36 @@ public class DockerOrchestrator {
         return true;
     }
 
+    /**
+     * Removes the containers in reverse dependency order, with all the containers in a level removed at once, and
+     * then removes all the images together.
+     */
+    private void cleanInParallel() {
+        final List<Id> cleaned = new ArrayList<>();
+        for (List<Id> level : repo.levels(true)) {
+            final List<Id> ids = inclusive(level);
+            parallelRunner.run("clean", ids, new ParallelRunner.Task() {
+                @Override
+                public void run(Id id) {
+                    removeContainers(id);
+                }
+            });
+            cleaned.addAll(ids);
+        }
+        parallelRunner.run("remove the image of", cleaned, new ParallelRunner.Task() {
+            @Override
+            public void run(Id id) {
+                removeImage(id);
+            }
+        });
+    }
+
     void clean(final Id id) {
+        removeContainers(id);
+        removeImage(id);
+    }
+
+    private void removeContainers(final Id id) {
         if (id == null) {
             throw new IllegalArgumentException("id is null");
         }
@@ -186,6 +275,12 @@ public class DockerOrchestrator {
                 throw new OrchestrationException(e);
             }
         }
+        if (journal != null) {
+            journal.removed(id);
+        }
+    }
+
+    private void removeImage(final Id id) {
         String imageId = null;
         try {
             imageId = findImageId(id);
@@ -198,6 +293,7 @@ public class DockerOrchestrator {
             logger.info("Removing image " + imageId);
             try {
                 docker.removeImageCmd(imageId).withForce().exec();
+                images().remove(imageId);
             } catch (DockerException e) {
                 logger.warn(e.getMessage());
             }
@@ -213,15 +309,130 @@ public class DockerOrchestrator {
     }
 
     private List<Container> findContainers(Id id, boolean allContainers) {
-        final List<Container> matchingContainers = new ArrayList<>();
-        for (Container container : docker.listContainersCmd().withShowAll(allContainers).exec()) {
-            boolean imageNameMatches = container.getImage().equals(repo.imageName(id));
-            boolean containerNameMatches = asList(container.getNames()).contains(containerName(id));
-            if (imageNameMatches || containerNameMatches) {
-                matchingContainers.add(container);
+        final String imageName = repo.imageName(id);
+        final String containerName = containerName(id);
+        final List<Container> containers = containers().find(id, imageName, containerName, allContainers);
+        if (!containers.isEmpty()) {
+            return containers;
+        }
+        // containers created before we labelled them
+        return unlabelledContainers(id).find(id, imageName, containerName, allContainers);
+    }
+
+    /**
+     * Only the containers labelled as belonging to this project are listed.
+     */
+    private synchronized ContainerIndex containers() {
+        if (containerIndex == null) {
+            containerIndex = ContainerIndex.load(docker, Labels.filter(Labels.PROJECT, repo.project()));
+        }
+        return containerIndex;
+    }
+
+    /**
+     * The containers named as any of this project's are, listed the first time a lookup finds no labelled
+     * container, so the services that have no container yet do not list again on every lookup.
+     */
+    private synchronized ContainerIndex unlabelledContainers(Id id) {
+        if (unlabelledContainerIndex == null) {
+            final Set<String> names = new LinkedHashSet<>();
+            for (Id other : repo.ids(false)) {
+                names.add(containerName(other).replaceFirst("^/", ""));
             }
+            names.add(containerName(id).replaceFirst("^/", ""));
+            unlabelledContainerIndex = ContainerIndex.load(docker, Labels.nameFilter(names));
+        }
+        return unlabelledContainerIndex;
+    }
+
+    /**
+     * Subscribes to container events the first time it is called, and again if the event stream has failed.
+     *
+     * @return Null if not watching container events.
+     */
+    private synchronized ContainerStateCache stateCache() {
+        if (eventSource == null) {
+            return null;
+        }
+        if (stateCache == null || !stateCache.isLive()) {
+            closeSubscription();
+            final ContainerStateCache cache = new ContainerStateCache();
+            stateCache = cache;
+            subscription = eventSource.subscribe(new ContainerEventSource.Listener() {
+                @Override
+                public void onEvent(String containerId, String status) {
+                    if ("create".equals(status) && !cache.isTracked(containerId) && isOwnContainer(containerId)) {
+                        // created elsewhere, so the snapshot is missing it
+                        containersChanged();
+                    }
+                    cache.onEvent(containerId, status);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    cache.onError(throwable);
+                }
+            });
+            // list after subscribing, so no change is missed, the cache holds back events until it is seeded
+            containersChanged();
+            stateCache.seed(containers());
         }
-        return matchingContainers;
+        return stateCache;
+    }
+
+    /**
+     * @return True if the container is labelled as this project's, or it cannot be told.
+     */
+    private boolean isOwnContainer(String containerId) {
+        final InspectContainerResponse container;
+        try {
+            container = docker.inspectContainerCmd(containerId).exec();
+        } catch (NotFoundException e) {
+            // already gone
+            return false;
+        } catch (DockerException e) {
+            return true;
+        }
+        final Map<String, String> labels = container.getConfig() != null ? container.getConfig().getLabels() : null;
+        return labels != null && repo.project().equals(labels.get(Labels.PROJECT));
+    }
+
+    /**
+     * Records a change we have made, without waiting for its event.
+     */
+    private synchronized void stateChanged(String containerId, ContainerStateCache.State state) {
+        if (stateCache != null) {
+            stateCache.changed(containerId, state);
+        }
+    }
+
+    private synchronized void closeSubscription() {
+        if (subscription != null) {
+            try {
+                subscription.close();
+            } catch (IOException e) {
+                logger.warn("Unable to close container event stream: " + e.getMessage());
+            }
+            subscription = null;
+        }
+    }
+
+    /**
+     * Stops watching container events, if doing so.
+     */
+    @Override
+    public synchronized void close() {
+        closeSubscription();
+        stateCache = null;
+    }
+
+    /**
+     * Call after changing any container, and at the start of each operation, so the containers are listed again
+     * the next time they are needed.
+     */
+    private synchronized void containersChanged() {
+        containerIndex = null;
+        unlabelledContainerIndex = null;
     }
 
     private String containerName(Id id) {
@@ -230,15 +441,29 @@ public class DockerOrchestrator {
     }
 
     void build(final Id id) {
+        build(id, ServiceLog.direct(logger));
+    }
+
+    private void build(final Id id, ServiceLog log) {
         if (id == null) {
             throw new IllegalArgumentException("id is null");
         }
         try {
-            build(prepare(id), id);
+            if (fileOrchestrator.isStreaming()) {
+                build(stream(id, log), id, log);
+            } else {
+                build(prepare(id, log), id, log);
+            }
+            final ContextMetrics metrics = fileOrchestrator.metrics(id);
+            if (metrics != null) {
+                log.info("Context " + metrics);
+                contextMetricsListener.onContext(metrics);
+            }
         } catch (IOException e) {
             throw new OrchestrationException(e);
+        } finally {
+            log.flush();
         }
-
     }
 
     private void validate(final Id id) {
@@ -252,70 +477,208 @@ public class DockerOrchestrator {
         }
     }
 
-    private File prepare(Id id) throws IOException {
+    private File prepare(Id id, ServiceLog log) throws IOException {
         if (id == null) {
             throw new IllegalArgumentException("id is null");
         }
-        logger.info("Preparing " + id);
+        log.info("Preparing " + id);
         return fileOrchestrator.prepare(id, repo.src(id), conf(id));
     }
 
+    private InputStream stream(Id id, ServiceLog log) throws IOException {
+        if (id == null) {
+            throw new IllegalArgumentException("id is null");
+        }
+        log.info("Streaming " + id);
+        return fileOrchestrator.stream(id, repo.src(id), conf(id));
+    }
+
+    /**
+     * @return The id of the built image.
+     */
+    private String build(File dockerFolder, Id id, ServiceLog log) {
+        try {
+            final String contextHash = ContextHash.of(dockerFolder, buildFlags);
+            if (contextHash != null && !buildNoCache()) {
+                final String existingImageId = unchangedImageId(id, contextHash);
+                if (existingImageId != null) {
+                    log.info("Not building " + id + " (" + repo.tag(id) + "), it has not changed since image " + existingImageId);
+                    journalImage(id, contextHash, existingImageId);
+                    return existingImageId;
+                }
+            }
+            if (contextHash != null) {
+                labelContext(dockerFolder, contextHash);
+            }
+            final String imageId = build(docker.buildImageCmd(dockerFolder), id, log);
+            journalImage(id, contextHash, imageId);
+            return imageId;
+        } catch (IOException e) {
+            throw new OrchestrationException(e);
+        }
+    }
+
+    /**
+     * @return The id of the current image if it was built from the same context, otherwise null.
+     */
+    private String unchangedImageId(Id id, String contextHash) {
+        final String journalImageId = journal != null && contextHash.equals(journal.contextHash(id)) ? journal.imageId(id) : null;
+        if (journalImageId != null) {
+            // one inspect, rather than listing every image
+            final InspectImageResponse image = inspectImage(repo.tag(id));
+            if (image != null && isSameImageId(image.getId(), journalImageId) && contextHash.equals(label(image, Labels.CONTEXT_HASH))) {
+                return journalImageId;
+            }
+        }
+        final String existingImageId = findImageId(id);
+        if (existingImageId != null && contextHash.equals(label(inspectImage(existingImageId), Labels.CONTEXT_HASH))) {
+            return existingImageId;
+        }
+        return null;
+    }
+
+    private void journalImage(Id id, String contextHash, String imageId) {
+        if (journal != null && imageId != null) {
+            journal.built(id, contextHash, imageId);
+        }
+    }
+
+    /**
+     * @param context The context as a tar, closed when done.
+     * @return The id of the built image.
+     */
+    private String build(InputStream context, Id id, ServiceLog log) throws IOException {
+        try {
+            final String imageId = build(docker.buildImageCmd(context), id, log);
+            journalImage(id, null, imageId);
+            return imageId;
+        } finally {
+            context.close();
+        }
+    }
+
     @SuppressWarnings(("DM_DEFAULT_ENCODING"))
-    private void build(File dockerFolder, Id id) {
+    private String build(BuildImageCmd buildImageCmd, Id id, ServiceLog log) {
         try {
 
             String tag = repo.tag(id);
-            logger.info("Building " + id + " (" + tag + ")");
+            log.info("Building " + id + " (" + tag + ")");
 
             final boolean noCache = buildNoCache();
-            logger.info(" - no cache: " + noCache);
+            log.info(" - no cache: " + noCache);
 
             final boolean removeIntermediateImages = buildRemoveIntermediateImages();
-            logger.info(" - remove intermediate images: " + removeIntermediateImages);
+            log.info(" - remove intermediate images: " + removeIntermediateImages);
 
             final boolean quiet = buildQuiet();
-            logger.info(" - quiet: " + quiet);
+            log.info(" - quiet: " + quiet);
 
-            BuildImageCmd build = docker.buildImageCmd(dockerFolder)
+            BuildImageCmd build = buildImageCmd
                     .withNoCache(noCache)
                     .withRemove(removeIntermediateImages)
                     .withQuiet(quiet)
                     .withTag(tag);
 
-            throwExceptionIfThereIsAnError(build.exec());
-
+            final long start = currentTimeMillis();
+            final InputStream output = build.exec();
+            final ContextMetrics metrics = fileOrchestrator.metrics(id);
+            if (metrics != null) {
+                metrics.uploaded(currentTimeMillis() - start);
+            }
+            String imageId = throwExceptionIfThereIsAnError(id, output, log);
+            if (imageId != null) {
+                imageBuilt(tag, imageId);
+            } else {
+                imagesChanged();
+                imageId = findImageId(id);
+            }
             for (String otherTag : repo.conf(id).getTags()) {
                 int lastIndexOfColon = otherTag.lastIndexOf(':');
                 if (lastIndexOfColon > -1) {
                     String repositoryName = otherTag.substring(0, lastIndexOfColon);
                     String tagName = otherTag.substring(lastIndexOfColon + 1);
-                    docker.tagImageCmd(findImageId(id), repositoryName, tagName).withForce().exec();
+                    docker.tagImageCmd(imageId, repositoryName, tagName).withForce().exec();
+                    images().put(otherTag, imageId);
                 }
             }
+            return imageId;
         } catch (DockerException | IOException e) {
             throw new OrchestrationException(e);
         }
 
     }
 
+    /**
+     * @param image Tag or id.
+     * @return Null if there is no such image.
+     */
+    private InspectImageResponse inspectImage(String image) {
+        try {
+            return docker.inspectImageCmd(image).exec();
+        } catch (NotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return The value of the label on the image, or null if it does not have the label.
+     */
+    private static String label(InspectImageResponse image, String label) {
+        final Map<String, String> labels = image != null && image.getConfig() != null ? image.getConfig().getLabels() : null;
+        return labels != null ? labels.get(label) : null;
+    }
+
+    /**
+     * Adds the context hash to the image as a label, so the next build can tell if anything has changed.
+     */
+    private void labelContext(File dockerFolder, String contextHash) throws IOException {
+        final File dockerfile = new File(dockerFolder, "Dockerfile");
+        if (dockerfile.isFile()) {
+            Files.write(dockerfile.toPath(), ("\nLABEL " + Labels.CONTEXT_HASH + "=" + contextHash + "\n").getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        }
+    }
+
     private String findImageId(Id id) {
         String imageTag = repo.tag(id);
         logger.debug("Converting {} ({}) to image id.", id, imageTag);
-        List<Image> images = docker.listImagesCmd().exec();
-        for (Image i : images) {
-            for (String tag : i.getRepoTags()) {
-                if (tag.startsWith(imageTag)) {
-                    logger.debug("Using {} ({}) for {}. It matches (enough) to {}.", new Object[]{
-                            i.getId(),
-                            tag,
-                            id.toString(),
-                            imageTag});
-                    return i.getId();
-                }
+        String imageId = images().find(imageTag);
+        if (imageId == null) {
+            imageId = images().findByPrefix(imageTag);
+            if (imageId != null) {
+                logger.debug("Using {} for {}, as it has a tag that starts with {}.", new Object[]{
+                        imageId,
+                        id.toString(),
+                        imageTag});
             }
         }
-        logger.debug("could not find image ID for \"" + id + "\" (tag \"" + imageTag + "\")");
-        return null;
+        if (imageId == null) {
+            logger.debug("could not find image ID for \"" + id + "\" (tag \"" + imageTag + "\")");
+        }
+        return imageId;
+    }
+
+    private synchronized ImageIndex images() {
+        if (imageIndex == null) {
+            imageIndex = ImageIndex.load(docker);
+        }
+        return imageIndex;
+    }
+
+    /**
+     * Records a newly built image, if the images have been listed, so they do not need listing again.
+     */
+    private synchronized void imageBuilt(String tag, String imageId) {
+        if (imageIndex != null) {
+            imageIndex.put(tag, imageId);
+        }
+    }
+
+    /**
+     * Call when images have changed in a way that is not known, e.g. after a build, and at the start of each
+     * operation, so the images are listed again the next time they are needed.
+     */
+    private synchronized void imagesChanged() {
+        imageIndex = null;
     }
 
     private boolean buildQuiet() {
@@ -341,8 +704,9 @@ public class DockerOrchestrator {
 
         logger.info("Starting " + id);
 
+        final boolean runningFromJournal = isRunningFromJournal(id);
         try {
-            if (!imageExists(id)) {
+            if (!runningFromJournal && !imageExists(id)) {
                 logger.info("Image does not exist, so building it");
                 build(id);
             }
@@ -352,9 +716,12 @@ public class DockerOrchestrator {
 
         boolean failed = false;
         try {
-            Container existingContainer = findContainer(id);
+            Container existingContainer = runningFromJournal ? null : findContainer(id);
+
+            if (runningFromJournal) {
+                logger.info("Container already running");
 
-            if (existingContainer == null) {
+            } else if (existingContainer == null) {
                 logger.info("No existing container so creating and starting new one");
                 startContainer(createNewContainer(id));
 
@@ -363,12 +730,19 @@ public class DockerOrchestrator {
                 removeContainer(existingContainer);
                 startContainer(createNewContainer(id));
 
+            } else if (!isConfHashMatching(existingContainer, id)) {
+                logger.info("Configuration has changed, removing container and creating new one");
+                removeContainer(existingContainer);
+                startContainer(createNewContainer(id));
+
             } else if (isRunning(id)) {
                 logger.info("Container already running");
+                journalContainer(id, existingContainer.getId());
 
             } else {
                 logger.info("Starting existing container " + existingContainer.getId());
                 startContainer(existingContainer.getId());
+                journalContainer(id, existingContainer.getId());
             }
 
             for (Plugin plugin : plugins) {
@@ -389,6 +763,42 @@ public class DockerOrchestrator {
         }
     }
 
+    /**
+     * @return True if the journal's container is running, from the journal's image, with the current conf, and the
+     * image is still the one tagged. Costs an inspect of each.
+     */
+    private boolean isRunningFromJournal(Id id) {
+        if (journal == null) {
+            return false;
+        }
+        final String containerId = journal.containerId(id);
+        final String imageId = journal.imageId(id);
+        if (containerId == null || imageId == null || !Labels.hash(conf(id)).equals(journal.confHash(id))) {
+            return false;
+        }
+        final InspectContainerResponse container;
+        try {
+            container = docker.inspectContainerCmd(containerId).exec();
+        } catch (NotFoundException e) {
+            return false;
+        }
+        final Map<String, String> labels = container.getConfig() != null ? container.getConfig().getLabels() : null;
+        if (container.getState() == null || !container.getState().isRunning()
+                || !isSameImageId(container.getImageId(), imageId)
+                || labels == null || !id.toString().equals(labels.get(Labels.ID))) {
+            return false;
+        }
+        // the tag may have been built or pulled elsewhere since, leaving the container on an old image
+        final InspectImageResponse image = inspectImage(repo.tag(id));
+        return image != null && isSameImageId(image.getId(), imageId);
+    }
+
+    private void journalContainer(Id id, String containerId) {
+        if (journal != null) {
+            journal.created(id, containerId, findImageId(id), Labels.hash(conf(id)));
+        }
+    }
+
     private Container findContainer(Id id) {
         final List<Container> containerIds = findAllContainers(id);
         return containerIds.isEmpty() ? null : containerIds.get(0);
@@ -401,6 +811,8 @@ public class DockerOrchestrator {
     private void removeContainer(Container existingContainer) {
         try {
             docker.removeContainerCmd(existingContainer.getId()).withForce().exec();
+            containersChanged();
+            stateChanged(existingContainer.getId(), ContainerStateCache.State.REMOVED);
         } catch (InternalServerErrorException e) {
             if (isPermissionErrorTolerant() && isPermissionError(e)) {
                 logger.warn(String.format("ignoring %s when removing container as we are configured to be permission error tolerant", e));
@@ -463,7 +875,7 @@ public class DockerOrchestrator {
         try {
             String containerImageId = lookupImageIdFromContainer(containerId);
             String imageId = findImageId(id);
-            return containerImageId.equals(imageId);
+            return isSameImageId(containerImageId, imageId);
         } catch (DockerException e) {
             logger.error("Unable to find image with id " + id, e);
             throw new OrchestrationException(e);
@@ -471,6 +883,26 @@ public class DockerOrchestrator {
 
     }
 
+    /**
+     * @return False only if the container is labelled with a different conf hash, i.e. its conf has changed.
+     */
+    private boolean isConfHashMatching(Container container, Id id) {
+        final Map<String, String> labels = container.getLabels();
+        return labels == null || !labels.containsKey(Labels.CONF_HASH) || labels.get(Labels.CONF_HASH).equals(Labels.hash(conf(id)));
+    }
+
+    /**
+     * Image ids may be short (as in build output), or full, and may have a "sha256:" prefix.
+     */
+    static boolean isSameImageId(String a, String b) {
+        if (a == null || b == null) {
+            return false;
+        }
+        a = a.replaceFirst("^sha256:", "");
+        b = b.replaceFirst("^sha256:", "");
+        return !a.isEmpty() && !b.isEmpty() && (a.startsWith(b) || b.startsWith(a));
+    }
+
     private String lookupImageIdFromContainer(String containerId) {
         try {
             InspectContainerResponse containerInspectResponse = docker.inspectContainerCmd(containerId).exec();
@@ -484,6 +916,8 @@ public class DockerOrchestrator {
     private void startContainer(String idOfContainerToStart) {
         try {
             docker.startContainerCmd(idOfContainerToStart).exec();
+            containersChanged();
+            stateChanged(idOfContainerToStart, ContainerStateCache.State.RUNNING);
         } catch (DockerException e) {
             logger.error("Unable to start container " + idOfContainerToStart, e);
             throw new OrchestrationException(e);
@@ -496,7 +930,8 @@ public class DockerOrchestrator {
 
     private String createNewContainer(Id id) throws DockerException {
 
-        CreateContainerCmd cmd = docker.createContainerCmd(findImageId(id));
+        final String imageId = findImageId(id);
+        CreateContainerCmd cmd = docker.createContainerCmd(imageId);
 
         Conf conf = conf(id);
 
@@ -538,10 +973,21 @@ public class DockerOrchestrator {
         cmd.withBinds(binds.toArray(new Bind[binds.size()]));
 
         cmd.withName(repo.containerName(id));
+        cmd.withLabels(Labels.of(repo.project(), id, conf));
         logger.info(" - env " + conf.getEnv());
         cmd.withEnv(asEnvList(conf.getEnv()));
 
-        return cmd.exec().getId();
+        final String containerId = cmd.exec().getId();
+        containersChanged();
+        if (journal != null) {
+            journal.created(id, containerId, imageId, Labels.hash(conf));
+        }
+        synchronized (this) {
+            if (stateCache != null) {
+                stateCache.created(id.toString(), containerId);
+            }
+        }
+        return containerId;
     }
 
     /**
@@ -560,12 +1006,20 @@ public class DockerOrchestrator {
         if (id == null) {
             throw new IllegalArgumentException("id is null");
         }
-        boolean running = false;
-        final Container candidate = findContainer(id);
-        for (Container container : docker.listContainersCmd().withShowAll(false).exec()) {
-            running |= candidate != null && candidate.getId().equals(container.getId());
+        final Boolean running = isRunningFromEvents(id);
+        if (running != null) {
+            return running;
         }
-        return running;
+        final Container candidate = findContainer(id);
+        return candidate != null && containers().isRunning(candidate.getId());
+    }
+
+    /**
+     * @return Null if not watching events, or the container is not known.
+     */
+    private Boolean isRunningFromEvents(Id id) {
+        final ContainerStateCache cache = stateCache();
+        return cache == null ? null : cache.isRunning(id.toString());
     }
 
     private void healthCheck(Id id) {
@@ -608,10 +1062,15 @@ public class DockerOrchestrator {
 
         logger.info("Stopping " + id);
 
-        for (Container container : findRunningContainers(id)) {
+        final List<Container> runningContainers = Boolean.FALSE.equals(isRunningFromEvents(id))
+                ? Collections.<Container>emptyList()
+                : findRunningContainers(id);
+        for (Container container : runningContainers) {
             logger.info("Stopping container " + Arrays.toString(container.getNames()));
             try {
                 docker.stopContainerCmd(container.getId()).withTimeout(1).exec();
+                containersChanged();
+                stateChanged(container.getId(), ContainerStateCache.State.DIED);
             } catch (DockerException e) {
                 throw new OrchestrationException(e);
             }
@@ -622,6 +1081,11 @@ public class DockerOrchestrator {
     }
 
     public void build() {
+        imagesChanged();
+        if (buildRunner.getConcurrency() > 1) {
+            buildInParallel();
+            return;
+        }
         for (Id id : ids()) {
             if (!inclusive(id)) {
                 continue;
@@ -630,6 +1094,18 @@ public class DockerOrchestrator {
         }
     }
 
+    /**
+     * Builds all the images at once, as images do not depend on each other.
+     */
+    private void buildInParallel() {
+        buildRunner.run("build", inclusive(ids()), new ParallelRunner.Task() {
+            @Override
+            public void run(Id id) {
+                build(id, ServiceLog.buffered(logger, id));
+            }
+        });
+    }
+
     public void validate() {
         Exception innerException = null;
         for (Id id : ids()) {
@@ -647,6 +1123,16 @@ public class DockerOrchestrator {
     }
 
     public void start() {
+        containersChanged();
+        imagesChanged();
+        if (pipelineScheduler != null) {
+            startPipelined(false);
+            return;
+        }
+        if (isParallel()) {
+            startInParallel();
+            return;
+        }
         for (Id id : ids()) {
             if (!inclusive(id)) {
                 continue;
@@ -655,6 +1141,72 @@ public class DockerOrchestrator {
         }
     }
 
+    /**
+     * Starts each level of the dependency graph in turn, with all the containers in a level started at once.
+     */
+    private void startInParallel() {
+        for (List<Id> level : repo.levels(false)) {
+            parallelRunner.run("start", inclusive(level), new ParallelRunner.Task() {
+                @Override
+                public void run(Id id) {
+                    start(id);
+                }
+            });
+        }
+    }
+
+    /**
+     * Builds the images and then starts the containers. If pipelined, a container is started as soon as its image
+     * is built and the containers it links to are up, while the other images are still building.
+     */
+    public void buildAndStart() {
+        containersChanged();
+        imagesChanged();
+        if (pipelineScheduler != null) {
+            startPipelined(true);
+            return;
+        }
+        build();
+        start();
+    }
+
+    private void startPipelined(final boolean rebuild) {
+        final List<Id> ids = inclusive(ids());
+        final Map<Id, List<Id>> links = new HashMap<>();
+        for (Id id : ids) {
+            links.put(id, repo.links(id));
+        }
+        pipelineScheduler.run(ids, links,
+                new ParallelRunner.Task() {
+                    @Override
+                    public void run(Id id) {
+                        if (rebuild || !imageExists(id)) {
+                            build(id, ServiceLog.buffered(logger, id));
+                        }
+                    }
+                },
+                new ParallelRunner.Task() {
+                    @Override
+                    public void run(Id id) {
+                        start(id);
+                    }
+                });
+    }
+
+    private boolean isParallel() {
+        return parallelRunner.getConcurrency() > 1;
+    }
+
+    private List<Id> inclusive(List<Id> ids) {
+        final List<Id> out = new ArrayList<>();
+        for (Id id : ids) {
+            if (inclusive(id)) {
+                out.add(id);
+            }
+        }
+        return out;
+    }
+
     public Map<String, String> getIPAddresses() {
         Map<String, String> idToIpAddressMap = new HashMap<>();
         for (Id id : ids()) {
@@ -669,6 +1221,11 @@ public class DockerOrchestrator {
     }
 
     public void stop() {
+        containersChanged();
+        if (isParallel()) {
+            stopInParallel();
+            return;
+        }
         for (Id id : repo.ids(true)) {
             if (!inclusive(id)) {
                 continue;
@@ -677,8 +1234,23 @@ public class DockerOrchestrator {
         }
     }
 
+    /**
+     * Stops the containers in reverse dependency order, so a container is stopped only after everything linking
+     * to it, with all the containers in a level stopped at once.
+     */
+    private void stopInParallel() {
+        for (List<Id> level : repo.levels(true)) {
+            parallelRunner.run("stop", inclusive(level), new ParallelRunner.Task() {
+                @Override
+                public void run(Id id) {
+                    stop(id);
+                }
+            });
+        }
+    }
+
     public List<Id> ids() {
-        return repo.ids(false);
+        return new ArrayList<>(repo.ids(false));
     }
 
     public void push() {
@@ -695,7 +1267,7 @@ public class DockerOrchestrator {
             PushImageCmd pushImageCmd = docker.pushImageCmd(repo(id));
             logger.info("Pushing " + id + " (" + pushImageCmd.getName() + ")");
             InputStream inputStream = pushImageCmd.exec();
-            throwExceptionIfThereIsAnError(inputStream);
+            throwExceptionIfThereIsAnError(id, inputStream, ServiceLog.direct(logger));
         } catch (DockerException | IOException e) {
             throw new OrchestrationException(e);
         }
@@ -705,23 +1277,18 @@ public class DockerOrchestrator {
         return repo.tag(id).replaceFirst(":[^:]*$", "");
     }
 
-    private void throwExceptionIfThereIsAnError(InputStream exec) throws IOException {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(exec));
-        String l;
-        while ((l = reader.readLine()) != null) {
-            logger.info(l);
-            if (l.startsWith("{\"errorDetail")) {
-                throw new OrchestrationException(extractMessage(l));
-            }
-        }
-    }
-
-    private String extractMessage(String l) {
-        return l;
-        //return l.replaceFirst(".*\"message\":\"([^\"]*)\".*", "$1");
+    /**
+     * @return The id of the image built, if the stream is the output of a build, otherwise null.
+     */
+    private String throwExceptionIfThereIsAnError(Id id, InputStream exec, ServiceLog log) throws IOException {
+        return new ProgressStream(id, log, progressListener).read(exec);
     }
 
     public boolean isRunning() {
+        if (stateCache() == null) {
+            // nothing tells us of changes made elsewhere, so list again
+            containersChanged();
+        }
         for (Id id : ids()) {
             if (!isRunning(id)) {
                 return false;
@@ -1,13 +1,18 @@
 package com.alexecollins.docker.orchestration;
 
 import com.alexecollins.docker.orchestration.model.BuildFlag;
+import com.alexecollins.docker.orchestration.util.CompiledTokenResolver;
 import com.alexecollins.docker.orchestration.util.TextFileFilter;
+import com.alexecollins.docker.orchestration.util.TextFiles;
 import com.github.dockerjava.api.DockerClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.FileFilter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
 import java.util.EnumSet;
 import java.util.Properties;
 import java.util.Set;
@@ -20,12 +25,31 @@ public class DockerOrchestratorBuilder {
     private File rootDir;
     private String user;
     private String project;
-    private FileFilter filter = TextFileFilter.INSTANCE;
+    /**
+     * null if a {@link TextFileFilter} is to be made from the text file extensions
+     */
+    private FileFilter filter;
+    private Collection<String> textFileExtensions = TextFileFilter.DEFAULT_EXTENSIONS;
+    private boolean sniffTextFiles;
     private Properties properties = new Properties();
     private Set<BuildFlag> buildFlags = EnumSet.noneOf(BuildFlag.class);
     private Logger logger = LoggerFactory.getLogger(DockerOrchestrator.class);
     private DefinitionFilter definitionFilter = DefinitionFilter.ANY;
     private boolean permissionErrorTolerant;
+    private int concurrency = 1;
+    private int buildConcurrency = 1;
+    private boolean pipelined;
+    private boolean watchEvents;
+    private boolean incremental;
+    private boolean linkPackaging;
+    private boolean streamContext;
+    private boolean journal;
+    private int filterParallelism = 1;
+    private Charset filterCharset = StandardCharsets.UTF_8;
+    private long filterMapThreshold = Long.MAX_VALUE;
+    private ContainerEventSource eventSource;
+    private ProgressListener progressListener = ProgressListener.NONE;
+    private ContextMetricsListener contextMetricsListener = ContextMetricsListener.NONE;
 
     DockerOrchestratorBuilder() {
     }
@@ -65,6 +89,25 @@ public class DockerOrchestratorBuilder {
         return this;
     }
 
+    /**
+     * @param textFileExtensions The extensions, without the dot, of the files to filter, if no filter is set.
+     *                           Defaults to {@link TextFileFilter#DEFAULT_EXTENSIONS}.
+     */
+    public DockerOrchestratorBuilder textFileExtensions(Collection<String> textFileExtensions) {
+        this.textFileExtensions = textFileExtensions;
+        return this;
+    }
+
+    /**
+     * @param sniffTextFiles If true, and no filter is set, the start of each file is looked at to decide if it is
+     *                       text to filter: files with other extensions are filtered if they look like text, and
+     *                       files with text extensions are not if they look binary.
+     */
+    public DockerOrchestratorBuilder sniffTextFiles(boolean sniffTextFiles) {
+        this.sniffTextFiles = sniffTextFiles;
+        return this;
+    }
+
     public DockerOrchestratorBuilder properties(Properties properties) {
         this.properties = properties;
         return this;
@@ -90,15 +133,150 @@ public class DockerOrchestratorBuilder {
         return this;
     }
 
+    /**
+     * @param concurrency How many containers to start, stop or clean at once. Containers are started a dependency
+     *                    level at a time, so a container is only started once everything it links to is up, and
+     *                    stopped in the reverse order. Defaults to 1, i.e. one at a time.
+     */
+    public DockerOrchestratorBuilder concurrency(int concurrency) {
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * @param buildConcurrency How many images to build at once. The build output of each image is logged as one
+     *                         block when that image is done. Defaults to 1, i.e. one at a time.
+     */
+    public DockerOrchestratorBuilder buildConcurrency(int buildConcurrency) {
+        this.buildConcurrency = buildConcurrency;
+        return this;
+    }
+
+    /**
+     * @param pipelined If true, {@link DockerOrchestrator#start()} and {@link DockerOrchestrator#buildAndStart()}
+     *                  build images on a pool of {@link #buildConcurrency(int)} threads, and start each container
+     *                  on a pool of {@link #concurrency(int)} threads as soon as its image is built and the
+     *                  containers it links to are up.
+     */
+    public DockerOrchestratorBuilder pipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+        return this;
+    }
+
+    /**
+     * @param watchEvents If true, the state of containers is kept up to date from the Docker events stream, rather
+     *                    than listing containers each time. Call {@link DockerOrchestrator#close()} when done.
+     */
+    public DockerOrchestratorBuilder watchEvents(boolean watchEvents) {
+        this.watchEvents = watchEvents;
+        return this;
+    }
+
+    /**
+     * @param progressListener Receives each message from the output of builds and pushes.
+     */
+    public DockerOrchestratorBuilder progressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+        return this;
+    }
+
+    /**
+     * @param contextMetricsListener Receives the size and make up of each build context, and how long it took to
+     *                               prepare and send.
+     */
+    public DockerOrchestratorBuilder contextMetricsListener(ContextMetricsListener contextMetricsListener) {
+        this.contextMetricsListener = contextMetricsListener;
+        return this;
+    }
+
+    /**
+     * @param incremental If true, only files that have changed are copied into the work directory, and files that
+     *                    are no longer in the build context are deleted from it.
+     */
+    public DockerOrchestratorBuilder incremental(boolean incremental) {
+        this.incremental = incremental;
+        return this;
+    }
+
+    /**
+     * @param linkPackaging If true, packaged files that are not filtered are hard linked into the work directory
+     *                      rather than copied, falling back to a copy if they cannot be linked.
+     */
+    public DockerOrchestratorBuilder linkPackaging(boolean linkPackaging) {
+        this.linkPackaging = linkPackaging;
+        return this;
+    }
+
+    /**
+     * @param streamContext If true, the build context is sent to Docker as a tar written straight from the source
+     *                      and packaged files, rather than being prepared in the work directory first. Builds are not
+     *                      skipped when the context has not changed.
+     */
+    public DockerOrchestratorBuilder streamContext(boolean streamContext) {
+        this.streamContext = streamContext;
+        return this;
+    }
+
+    /**
+     * @param journal If true, what was built and created is recorded in the work directory, so the next run can
+     *                check it with a single inspect, rather than listing images and containers.
+     */
+    public DockerOrchestratorBuilder journal(boolean journal) {
+        this.journal = journal;
+        return this;
+    }
+
+    /**
+     * @param filterParallelism How many files to filter at once when preparing a build context in the work
+     *                          directory. Defaults to 1, i.e. one at a time.
+     */
+    public DockerOrchestratorBuilder filterParallelism(int filterParallelism) {
+        this.filterParallelism = filterParallelism;
+        return this;
+    }
+
+    /**
+     * @param filterCharset The charset of the files to filter, and of the configuration files. Defaults to UTF-8,
+     *                      whatever the platform's charset.
+     */
+    public DockerOrchestratorBuilder filterCharset(Charset filterCharset) {
+        this.filterCharset = filterCharset;
+        return this;
+    }
+
+    /**
+     * @param filterMapThreshold Files to filter of at least this many bytes are memory mapped, rather than read
+     *                           through a buffer. Defaults to never.
+     */
+    public DockerOrchestratorBuilder filterMapThreshold(long filterMapThreshold) {
+        this.filterMapThreshold = filterMapThreshold;
+        return this;
+    }
+
+    DockerOrchestratorBuilder eventSource(ContainerEventSource eventSource) {
+        this.eventSource = eventSource;
+        return this;
+    }
+
     public DockerOrchestrator build() {
+        final CompiledTokenResolver resolver = new CompiledTokenResolver(properties);
+        final TextFiles textFiles = new TextFiles(filterCharset, filterMapThreshold);
         return new DockerOrchestrator(
                 docker,
-                new Repo(user, project, src, properties),
-                new FileOrchestrator(workDir, rootDir, filter, properties),
+                new Repo(user, project, src, resolver, textFiles),
+                new FileOrchestrator(workDir, rootDir, filter != null ? filter : new TextFileFilter(textFileExtensions, sniffTextFiles), resolver, incremental, linkPackaging, streamContext, filterParallelism,
+                        textFiles),
                 buildFlags,
                 logger,
                 dockerfileValidator,
                 definitionFilter,
-                permissionErrorTolerant);
+                permissionErrorTolerant,
+                concurrency,
+                buildConcurrency,
+                pipelined,
+                eventSource != null ? eventSource : watchEvents ? new DockerEventSource(docker) : null,
+                progressListener,
+                contextMetricsListener,
+                journal ? new Journal(new File(workDir, Journal.FILE_NAME)) : null);
     }
 }
\ No newline at end of file
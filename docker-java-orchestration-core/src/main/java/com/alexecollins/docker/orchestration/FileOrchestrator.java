@@ -3,18 +3,31 @@ package com.alexecollins.docker.orchestration;
 import com.alexecollins.docker.orchestration.model.Conf;
 import com.alexecollins.docker.orchestration.model.Id;
 import com.alexecollins.docker.orchestration.model.Item;
+import com.alexecollins.docker.orchestration.util.CompiledTokenResolver;
+import com.alexecollins.docker.orchestration.util.FilterStats;
 import com.alexecollins.docker.orchestration.util.Filters;
+import com.alexecollins.docker.orchestration.util.TextFiles;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.lang.System.currentTimeMillis;
 
 import static org.apache.commons.io.FileUtils.copyDirectory;
-import static org.apache.commons.io.FileUtils.copyDirectoryToDirectory;
+import static org.apache.commons.io.FileUtils.copyFile;
 import static org.apache.commons.io.FileUtils.copyFileToDirectory;
+import static org.apache.commons.io.FileUtils.forceDelete;
+import static org.apache.commons.io.FileUtils.forceMkdir;
 
 class FileOrchestrator {
 
@@ -25,9 +38,9 @@ class FileOrchestrator {
      */
     private final FileFilter filter;
     /**
-     * properties to filter
+     * resolves the tokens to filter
      */
-    private final Properties properties;
+    private final CompiledTokenResolver resolver;
 
     /**
      * output directory
@@ -39,7 +52,49 @@ class FileOrchestrator {
      */
     private final File rootDir;
 
+    /**
+     * only copy what has changed since the last prepare
+     */
+    private final boolean incremental;
+
+    /**
+     * hard link packaged files that are not filtered, rather than copying them
+     */
+    private final boolean link;
+
+    /**
+     * stream the context as a tar, rather than preparing it in the output directory
+     */
+    private final boolean stream;
+
+    /**
+     * how many files to filter at once
+     */
+    private final int filterParallelism;
+
+    /**
+     * charset and how to read the files to filter
+     */
+    private final TextFiles textFiles;
+
+    /**
+     * metrics of the last context prepared or streamed for each service
+     */
+    private final Map<Id, ContextMetrics> metrics = new ConcurrentHashMap<>();
+
     FileOrchestrator(File workDir, File rootDir, FileFilter fileFilter, Properties properties) {
+        this(workDir, rootDir, fileFilter, properties, false, false, false);
+    }
+
+    FileOrchestrator(File workDir, File rootDir, FileFilter fileFilter, Properties properties, boolean incremental) {
+        this(workDir, rootDir, fileFilter, properties, incremental, false, false);
+    }
+
+    FileOrchestrator(File workDir, File rootDir, FileFilter fileFilter, Properties properties, boolean incremental, boolean link, boolean stream) {
+        this(workDir, rootDir, fileFilter, new CompiledTokenResolver(properties), incremental, link, stream, 1, TextFiles.UTF_8);
+    }
+
+    FileOrchestrator(File workDir, File rootDir, FileFilter fileFilter, CompiledTokenResolver resolver, boolean incremental, boolean link, boolean stream, int filterParallelism, TextFiles textFiles) {
         if (workDir == null) {
             throw new IllegalArgumentException("Working output directory is null");
         }
@@ -49,14 +104,25 @@ class FileOrchestrator {
         if (fileFilter == null) {
             throw new IllegalArgumentException("filter is null");
         }
-        if (properties == null) {
-            throw new IllegalArgumentException("properties is null");
+        if (resolver == null) {
+            throw new IllegalArgumentException("resolver is null");
+        }
+        if (filterParallelism < 1) {
+            throw new IllegalArgumentException("filterParallelism must be at least 1");
+        }
+        if (textFiles == null) {
+            throw new IllegalArgumentException("textFiles is null");
         }
 
         this.workDir = workDir;
         this.rootDir = rootDir;
         this.filter = fileFilter;
-        this.properties = properties;
+        this.resolver = resolver;
+        this.incremental = incremental;
+        this.link = link;
+        this.stream = stream;
+        this.filterParallelism = filterParallelism;
+        this.textFiles = textFiles;
     }
 
     File prepare(Id id, File dockerFolder, Conf conf) throws IOException {
@@ -64,30 +130,247 @@ class FileOrchestrator {
             throw new IllegalArgumentException("id is null");
         }
         final File destDir = new File(workDir, dockerFolder.getName());
+        if (incremental) {
+            return sync(id, destDir, dockerFolder, conf);
+        }
+        final ContextMetrics metrics = new ContextMetrics(id);
+        final DockerIgnore ignore = DockerIgnore.of(dockerFolder);
+        long start = currentTimeMillis();
         // copy template
-        copyDirectory(dockerFolder, destDir);
+        copyDirectory(dockerFolder, destDir, ignore.filter(dockerFolder, ""));
+        metrics.copied(currentTimeMillis() - start);
 
-        Filters.filter(destDir, filter, properties);
+        start = currentTimeMillis();
+        final FilterStats stats = Filters.filter(destDir, filter, resolver, textFiles, filterParallelism);
+        metrics.filtered(stats.getBytes(), currentTimeMillis() - start);
+        metrics.filterSkipped(stats.getSkipped());
+        LOGGER.info(" - filtered " + stats.getFiles() + " file(s), " + stats.getSkipped() + " without tokens left as they were");
 
         // copy files
         for (Item item : conf.getPackaging().getAdd()) {
             File fileEntry = new File(rootDir, item.getPath());
-            copyFileEntry(destDir, fileEntry);
+            if (ignore.isIgnored(fileEntry.getName())) {
+                LOGGER.info(" - ignore " + fileEntry);
+                continue;
+            }
+            start = currentTimeMillis();
+            // it may be a hard link to the packaged file from a previous prepare, so must not be written into
+            deleteIfExists(new File(destDir, fileEntry.getName()));
             if (item.shouldFilter()) {
-                Filters.filter(fileEntry, filter, properties);
+                // copied and filtered at once, so the time is filter time
+                final FilterStats itemStats = filterFileEntry(destDir, fileEntry, ignore);
+                metrics.filtered(itemStats.getBytes(), currentTimeMillis() - start);
+                metrics.filterSkipped(itemStats.getSkipped());
+            } else if (link) {
+                linkFileEntry(destDir, fileEntry, ignore);
+                metrics.copied(currentTimeMillis() - start);
+            } else {
+                copyFileEntry(destDir, fileEntry, ignore);
+                metrics.copied(currentTimeMillis() - start);
             }
         }
 
+        measure(destDir, metrics);
         return destDir;
     }
 
-    private void copyFileEntry(final File destDir, File fileEntry) throws IOException {
+    boolean isStreaming() {
+        return stream;
+    }
+
+    /**
+     * @return The build context as a tar, read straight from the source and packaged files.
+     */
+    InputStream stream(Id id, File dockerFolder, Conf conf) throws IOException {
+        if (id == null) {
+            throw new IllegalArgumentException("id is null");
+        }
+        final ContextMetrics metrics = new ContextMetrics(id);
+        this.metrics.put(id, metrics);
+        return new ContextTar(rootDir, filter, resolver, textFiles).stream(id, dockerFolder, conf, metrics);
+    }
+
+    /**
+     * @return The metrics of the last context prepared or streamed for the service, or null if there has been none.
+     * A streamed context's metrics are complete once the stream has been read.
+     */
+    ContextMetrics metrics(Id id) {
+        return metrics.get(id);
+    }
+
+    private void measure(File destDir, ContextMetrics metrics) {
+        for (String path : ContextHash.paths(destDir)) {
+            metrics.file(path, new File(destDir, path).length());
+        }
+        this.metrics.put(metrics.getId(), metrics);
+    }
+
+    /**
+     * Like a full prepare, but leaves files that are already up to date alone, and deletes files that are no longer
+     * part of the context.
+     */
+    private File sync(Id id, File destDir, File dockerFolder, Conf conf) throws IOException {
+        final long start = currentTimeMillis();
+        final Sync sync = new Sync(destDir, DockerIgnore.of(dockerFolder), new ContextMetrics(id));
+        sync.sync(dockerFolder, destDir, true, false);
+
+        for (Item item : conf.getPackaging().getAdd()) {
+            File fileEntry = new File(rootDir, item.getPath());
+            if (sync.ignore.isIgnored(fileEntry.getName())) {
+                LOGGER.info(" - ignore " + fileEntry);
+                continue;
+            }
+            LOGGER.info(" - add " + fileEntry);
+            sync.sync(fileEntry, new File(destDir, fileEntry.getName()), item.shouldFilter(), link && !item.shouldFilter());
+        }
+
+        sync.deleteStale(destDir);
+        sync.metrics.copied(currentTimeMillis() - start - sync.metrics.getFilterMillis());
+        LOGGER.info(" - copied " + sync.copied + " file(s), linked " + sync.linked + ", " + sync.unchanged + " unchanged, deleted " + sync.deleted);
+        measure(destDir, sync.metrics);
+        return destDir;
+    }
+
+    private void linkFileEntry(final File destDir, File fileEntry, DockerIgnore ignore) throws IOException {
+        LOGGER.info(" - link " + fileEntry);
+        linkTree(fileEntry, new File(destDir, fileEntry.getName()), fileEntry.getName(), ignore);
+    }
+
+    private void linkTree(File src, File dest, String path, DockerIgnore ignore) throws IOException {
+        if (src.isDirectory()) {
+            forceMkdir(dest);
+            //noinspection ConstantConditions
+            for (File child : src.listFiles()) {
+                final String childPath = path + "/" + child.getName();
+                if (!ignore.isIgnored(childPath)) {
+                    linkTree(child, new File(dest, child.getName()), childPath, ignore);
+                }
+            }
+        } else {
+            link(src, dest);
+        }
+    }
+
+    /**
+     * Hard links the file, or copies it if the file system cannot link it, e.g. because it is on another device.
+     *
+     * @return True if linked.
+     */
+    private static boolean link(File src, File dest) throws IOException {
+        Files.deleteIfExists(dest.toPath());
+        try {
+            Files.createLink(dest.toPath(), src.toPath());
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            LOGGER.debug("Cannot link " + dest + " to " + src + ", copying instead: " + e);
+            copyFile(src, dest);
+            return false;
+        }
+    }
+
+    private static void deleteIfExists(File file) throws IOException {
+        if (file.exists()) {
+            forceDelete(file);
+        }
+    }
+
+    private FilterStats filterFileEntry(File destDir, File fileEntry, DockerIgnore ignore) throws IOException {
+        LOGGER.info(" - add and filter " + fileEntry);
+        return Filters.copy(fileEntry, new File(destDir, fileEntry.getName()), ignore.filter(fileEntry, fileEntry.getName() + "/"), filter, resolver, textFiles);
+    }
+
+    private void copyFileEntry(final File destDir, File fileEntry, DockerIgnore ignore) throws IOException {
         LOGGER.info(" - add " + fileEntry);
         if (fileEntry.isDirectory()) {
-            copyDirectoryToDirectory(fileEntry, destDir);
+            copyDirectory(fileEntry, new File(destDir, fileEntry.getName()), ignore.filter(fileEntry, fileEntry.getName() + "/"));
         } else {
             copyFileToDirectory(fileEntry, destDir);
         }
     }
 
+    private class Sync {
+        private final File destDir;
+        private final DockerIgnore ignore;
+        private final ContextMetrics metrics;
+        /**
+         * every file and directory that should be in the prepared context
+         */
+        private final Set<File> wanted = new HashSet<>();
+        private int copied;
+        private int linked;
+        private int unchanged;
+        private int deleted;
+
+        Sync(File destDir, DockerIgnore ignore, ContextMetrics metrics) {
+            this.destDir = destDir;
+            this.ignore = ignore;
+            this.metrics = metrics;
+        }
+
+        void sync(File src, File dest, boolean filterText, boolean link) throws IOException {
+            if (ignore.isIgnored(destDir, dest)) {
+                // and if it was copied before, it is now stale
+                return;
+            }
+            wanted.add(dest);
+            if (src.isDirectory()) {
+                if (dest.isFile()) {
+                    forceDelete(dest);
+                }
+                forceMkdir(dest);
+                //noinspection ConstantConditions
+                for (File child : src.listFiles()) {
+                    sync(child, new File(dest, child.getName()), filterText, link);
+                }
+                return;
+            }
+            if (dest.isDirectory()) {
+                forceDelete(dest);
+            }
+            if (filterText && filter.accept(src)) {
+                // filtered files are compared by content, as their size and modified time always differ from the source
+                final long start = currentTimeMillis();
+                final String text = textFiles.read(src);
+                final String filtered = Filters.filter(text, resolver);
+                if (filtered.equals(text)) {
+                    metrics.filtered(0, currentTimeMillis() - start);
+                    metrics.filterSkipped(1);
+                } else {
+                    metrics.filtered(src.length(), currentTimeMillis() - start);
+                }
+                if (dest.isFile() && filtered.equals(textFiles.read(dest))) {
+                    unchanged++;
+                } else {
+                    textFiles.write(dest, filtered);
+                    copied++;
+                }
+            } else if (dest.isFile() && dest.length() == src.length() && dest.lastModified() == src.lastModified()) {
+                unchanged++;
+            } else if (link) {
+                if (FileOrchestrator.link(src, dest)) {
+                    linked++;
+                } else {
+                    copied++;
+                }
+            } else {
+                // it may be a hard link from a linking prepare
+                Files.deleteIfExists(dest.toPath());
+                copyFile(src, dest);
+                copied++;
+            }
+        }
+
+        void deleteStale(File dir) throws IOException {
+            //noinspection ConstantConditions
+            for (File child : dir.listFiles()) {
+                if (!wanted.contains(child)) {
+                    LOGGER.debug(" - delete " + child);
+                    forceDelete(child);
+                    deleted++;
+                } else if (child.isDirectory()) {
+                    deleteStale(child);
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,71 @@
+package com.alexecollins.docker.orchestration;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.model.Image;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The images on the daemon, indexed by repo tag, listed once and then kept up to date as images are built, tagged
+ * and removed.
+ */
+class ImageIndex {
+    private final Map<String, String> imageIds = new LinkedHashMap<>();
+
+    ImageIndex(List<Image> images) {
+        for (Image image : images) {
+            if (image.getRepoTags() != null) {
+                for (String tag : image.getRepoTags()) {
+                    imageIds.put(tag, image.getId());
+                }
+            }
+        }
+    }
+
+    static ImageIndex load(DockerClient docker) {
+        return new ImageIndex(docker.listImagesCmd().exec());
+    }
+
+    /**
+     * @param tag E.g. "user/app:1.0", or "user/app" which is the same as "user/app:latest".
+     * @return The id of the image with exactly that tag, or null.
+     */
+    synchronized String find(String tag) {
+        final String imageId = imageIds.get(tag);
+        if (imageId == null && !hasTagName(tag)) {
+            return imageIds.get(tag + ":latest");
+        }
+        return imageId;
+    }
+
+    /**
+     * @return The id of the first image with a tag that starts with the prefix, or null.
+     */
+    synchronized String findByPrefix(String prefix) {
+        for (Map.Entry<String, String> entry : imageIds.entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    synchronized void put(String tag, String imageId) {
+        imageIds.put(hasTagName(tag) ? tag : tag + ":latest", imageId);
+    }
+
+    synchronized void remove(String imageId) {
+        for (Iterator<String> iterator = imageIds.values().iterator(); iterator.hasNext(); ) {
+            if (iterator.next().equals(imageId)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static boolean hasTagName(String tag) {
+        return tag.lastIndexOf(':') > tag.lastIndexOf('/');
+    }
+}
@@ -0,0 +1,112 @@
+package com.alexecollins.docker.orchestration;
+
+import com.alexecollins.docker.orchestration.model.Id;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * What the last run built and created for each service, kept in the work directory, so the next run does not need to
+ * list images and containers to find them. Everything in it must be checked against Docker before it is used, as it
+ * may be out of date.
+ */
+class Journal {
+    static final String FILE_NAME = "docker-orchestration.properties";
+    private static final Logger LOGGER = LoggerFactory.getLogger(Journal.class);
+    private static final String CONTEXT_HASH = "contextHash";
+    private static final String IMAGE_ID = "imageId";
+    private static final String CONTAINER_ID = "containerId";
+    private static final String CONF_HASH = "confHash";
+
+    private final File file;
+    private final Properties properties = new Properties();
+
+    Journal(File file) {
+        this.file = file;
+        if (file.isFile()) {
+            try (InputStream in = new FileInputStream(file)) {
+                properties.load(in);
+            } catch (IOException e) {
+                // it is only a cache, so start again
+                LOGGER.warn("Ignoring unreadable journal " + file + ": " + e);
+            }
+        }
+    }
+
+    synchronized String contextHash(Id id) {
+        return get(id, CONTEXT_HASH);
+    }
+
+    synchronized String imageId(Id id) {
+        return get(id, IMAGE_ID);
+    }
+
+    synchronized String containerId(Id id) {
+        return get(id, CONTAINER_ID);
+    }
+
+    synchronized String confHash(Id id) {
+        return get(id, CONF_HASH);
+    }
+
+    /**
+     * @param contextHash May be null, if the context was not hashed.
+     */
+    synchronized void built(Id id, String contextHash, String imageId) {
+        set(id, CONTEXT_HASH, contextHash);
+        set(id, IMAGE_ID, imageId);
+        save();
+    }
+
+    synchronized void created(Id id, String containerId, String imageId, String confHash) {
+        set(id, CONTAINER_ID, containerId);
+        set(id, IMAGE_ID, imageId);
+        set(id, CONF_HASH, confHash);
+        save();
+    }
+
+    synchronized void removed(Id id) {
+        for (String key : new String[]{CONTEXT_HASH, IMAGE_ID, CONTAINER_ID, CONF_HASH}) {
+            set(id, key, null);
+        }
+        save();
+    }
+
+    private String get(Id id, String key) {
+        return properties.getProperty(id + "." + key);
+    }
+
+    private void set(Id id, String key, String value) {
+        if (value == null) {
+            properties.remove(id + "." + key);
+        } else {
+            properties.setProperty(id + "." + key, value);
+        }
+    }
+
+    /**
+     * Writes a new file and moves it over the old one, so a failed run never leaves half a journal.
+     */
+    private void save() {
+        final File tmp = new File(file + ".tmp");
+        try {
+            //noinspection ResultOfMethodCallIgnored
+            file.getParentFile().mkdirs();
+            try (OutputStream out = new FileOutputStream(tmp)) {
+                properties.store(out, "docker-java-orchestration journal, safe to delete");
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOGGER.warn("Cannot save journal " + file + ": " + e);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.alexecollins.docker.orchestration;
+
+import com.alexecollins.docker.orchestration.model.Conf;
+import com.alexecollins.docker.orchestration.model.Id;
+import com.github.dockerjava.api.model.Filters;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The labels put on every container the orchestrator creates, so it can find its own containers, and on the images
+ * it builds.
+ */
+final class Labels {
+    static final String PROJECT = "com.alexecollins.docker.orchestration.project";
+    static final String ID = "com.alexecollins.docker.orchestration.id";
+    static final String CONF_HASH = "com.alexecollins.docker.orchestration.conf-hash";
+    /**
+     * On images, the hash of the context they were built from.
+     */
+    static final String CONTEXT_HASH = "com.alexecollins.docker.orchestration.context-hash";
+
+    private Labels() {
+    }
+
+    static Map<String, String> of(String project, Id id, Conf conf) {
+        final Map<String, String> labels = new HashMap<>();
+        labels.put(PROJECT, project);
+        labels.put(ID, id.toString());
+        labels.put(CONF_HASH, hash(conf));
+        return labels;
+    }
+
+    /**
+     * @return A list containers filter that only matches containers with the label.
+     */
+    static Filters filter(String label, String value) {
+        return new Filters().withLabels(label + "=" + value);
+    }
+
+    /**
+     * @return A list containers filter that matches containers whose name contains the value.
+     */
+    static Filters nameFilter(String value) {
+        return nameFilter(Collections.singletonList(value));
+    }
+
+    /**
+     * @return A list containers filter that matches containers whose name contains any of the values.
+     */
+    static Filters nameFilter(Collection<String> values) {
+        return new Filters().withFilter("name", values.toArray(new String[values.size()]));
+    }
+
+    static String hash(Conf conf) {
+        return sha1(String.valueOf(conf));
+    }
+
+    static String sha1(String value) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        return hex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    static String hex(byte[] bytes) {
+        final StringBuilder out = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            out.append(String.format("%02x", b & 0xff));
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,95 @@
+package com.alexecollins.docker.orchestration;
+
+import com.alexecollins.docker.orchestration.model.Id;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a task for a group of ids at the same time on a bounded pool, and waits for all of them.
+ */
+class ParallelRunner {
+
+    interface Task {
+        void run(Id id);
+    }
+
+    private final int concurrency;
+
+    ParallelRunner(int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be at least 1, was " + concurrency);
+        }
+        this.concurrency = concurrency;
+    }
+
+    int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * @param action Used in the error message, e.g. "start".
+     * @throws OrchestrationException Listing every id that failed, not just the first.
+     */
+    void run(String action, List<Id> ids, final Task task) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, ids.size()));
+        try {
+            final Map<Id, Future<?>> futures = new LinkedHashMap<>();
+            for (final Id id : ids) {
+                futures.put(id, executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        task.run(id);
+                    }
+                }));
+            }
+            final Map<Id, Throwable> failures = new LinkedHashMap<>();
+            for (Map.Entry<Id, Future<?>> entry : futures.entrySet()) {
+                try {
+                    entry.getValue().get();
+                } catch (ExecutionException e) {
+                    failures.put(entry.getKey(), e.getCause());
+                }
+            }
+            throwIfFailed(action, failures);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OrchestrationException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    static void throwIfFailed(String action, Map<Id, Throwable> failures) {
+        if (failures.isEmpty()) {
+            return;
+        }
+        if (failures.size() == 1) {
+            final Throwable cause = failures.values().iterator().next();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new OrchestrationException(cause);
+        }
+        final StringBuilder message = new StringBuilder(String.format("failed to %s %d services:", action, failures.size()));
+        for (Map.Entry<Id, Throwable> entry : failures.entrySet()) {
+            message.append(String.format("%n - %s: %s", entry.getKey(), entry.getValue().getMessage()));
+        }
+        final OrchestrationException exception = new OrchestrationException(message.toString());
+        for (Throwable cause : failures.values()) {
+            exception.addSuppressed(cause);
+        }
+        throw exception;
+    }
+}
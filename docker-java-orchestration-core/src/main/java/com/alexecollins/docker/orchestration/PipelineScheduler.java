@@ -0,0 +1,184 @@
+package com.alexecollins.docker.orchestration;
+
+import com.alexecollins.docker.orchestration.model.Id;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds and starts services without waiting for one phase to finish before the next begins. Every image is
+ * built straight away on the build pool, and a service is started on the start pool as soon as its own image is
+ * built and every service it links to has started.
+ * <p/>
+ * Each service counts what it is waiting for, and its start is only submitted once that count reaches zero, so no
+ * pool thread is ever parked waiting, and a service waiting for a long build never holds up one that is ready.
+ */
+class PipelineScheduler {
+
+    private final int buildConcurrency;
+    private final int startConcurrency;
+    private final Logger logger;
+
+    PipelineScheduler(int buildConcurrency, int startConcurrency, Logger logger) {
+        if (buildConcurrency < 1) {
+            throw new IllegalArgumentException("buildConcurrency must be at least 1, was " + buildConcurrency);
+        }
+        if (startConcurrency < 1) {
+            throw new IllegalArgumentException("startConcurrency must be at least 1, was " + startConcurrency);
+        }
+        this.buildConcurrency = buildConcurrency;
+        this.startConcurrency = startConcurrency;
+        this.logger = logger;
+    }
+
+    /**
+     * @param ids   In dependency order.
+     * @param links The ids each id must wait for. Links to ids not in {@code ids} are not waited for.
+     */
+    void run(List<Id> ids, Map<Id, List<Id>> links, ParallelRunner.Task build, ParallelRunner.Task start) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        final ExecutorService buildPool = Executors.newFixedThreadPool(Math.min(buildConcurrency, ids.size()));
+        final ExecutorService startPool = Executors.newFixedThreadPool(Math.min(startConcurrency, ids.size()));
+        try {
+            final Run run = new Run(ids, links, build, start, startPool);
+            for (final Id id : ids) {
+                buildPool.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        run.build(id);
+                    }
+                });
+            }
+            run.await();
+
+            final Map<Id, Throwable> failures = new LinkedHashMap<>();
+            for (Id id : ids) {
+                if (run.failures.containsKey(id)) {
+                    failures.put(id, run.failures.get(id));
+                }
+            }
+            ParallelRunner.throwIfFailed("build and start", failures);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OrchestrationException(e);
+        } finally {
+            buildPool.shutdownNow();
+            startPool.shutdownNow();
+        }
+    }
+
+    /**
+     * The state of one run. Each service is done once it has been built, and then started, failed or skipped.
+     */
+    private class Run {
+        private final ParallelRunner.Task build;
+        private final ParallelRunner.Task start;
+        private final ExecutorService startPool;
+        /**
+         * how many of its own build and its links' starts each service is waiting for, negative once skipped
+         */
+        private final Map<Id, AtomicInteger> waiting = new HashMap<>();
+        /**
+         * the services that link to each service
+         */
+        private final Map<Id, List<Id>> dependents = new HashMap<>();
+        /**
+         * the first failure of each service, of its build or else its start
+         */
+        private final Map<Id, Throwable> failures = new ConcurrentHashMap<>();
+        private final CountDownLatch done;
+
+        Run(List<Id> ids, Map<Id, List<Id>> links, ParallelRunner.Task build, ParallelRunner.Task start, ExecutorService startPool) {
+            this.build = build;
+            this.start = start;
+            this.startPool = startPool;
+            // every build and every start, started or not
+            this.done = new CountDownLatch(ids.size() * 2);
+            for (Id id : ids) {
+                dependents.put(id, new ArrayList<Id>());
+            }
+            for (Id id : ids) {
+                int n = 1;
+                for (Id link : links.get(id)) {
+                    if (dependents.containsKey(link)) {
+                        dependents.get(link).add(id);
+                        n++;
+                    }
+                }
+                waiting.put(id, new AtomicInteger(n));
+            }
+        }
+
+        void build(Id id) {
+            try {
+                build.run(id);
+                ready(id);
+            } catch (RuntimeException | Error e) {
+                failures.put(id, e);
+                skip(id, id);
+            } finally {
+                done.countDown();
+            }
+        }
+
+        private void start(Id id) {
+            try {
+                start.run(id);
+                for (Id dependent : dependents.get(id)) {
+                    ready(dependent);
+                }
+            } catch (RuntimeException | Error e) {
+                failures.put(id, e);
+                for (Id dependent : dependents.get(id)) {
+                    skip(dependent, id);
+                }
+            } finally {
+                done.countDown();
+            }
+        }
+
+        /**
+         * One of the things the service is waiting for has finished, so start it if it was the last.
+         */
+        private void ready(final Id id) {
+            if (waiting.get(id).decrementAndGet() == 0) {
+                startPool.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        start(id);
+                    }
+                });
+            }
+        }
+
+        /**
+         * Skips the start of the service, and of everything that links to it, as the dependency failed.
+         */
+        private void skip(Id id, Id dependency) {
+            if (waiting.get(id).getAndSet(-1) < 0) {
+                // already skipped
+                return;
+            }
+            logger.info("Not starting " + id + ", " + dependency + " failed");
+            done.countDown();
+            for (Id dependent : dependents.get(id)) {
+                skip(dependent, id);
+            }
+        }
+
+        void await() throws InterruptedException {
+            done.await();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.alexecollins.docker.orchestration;
+
+/**
+ * A message from the output of a build or push.
+ */
+public class ProgressEvent {
+
+    public enum Type {
+        /**
+         * Output text, e.g. from a build step.
+         */
+        STREAM,
+        /**
+         * A status message, which may be for a layer.
+         */
+        STATUS,
+        /**
+         * Progress of a layer, e.g. downloading or pushing.
+         */
+        PROGRESS,
+        /**
+         * The id of the image built.
+         */
+        AUX,
+        /**
+         * The build or push failed.
+         */
+        ERROR
+    }
+
+    private final Type type;
+    private final String layer;
+    private final String text;
+    private final long current;
+    private final long total;
+
+    ProgressEvent(Type type, String layer, String text, long current, long total) {
+        this.type = type;
+        this.layer = layer;
+        this.text = text;
+        this.current = current;
+        this.total = total;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return The id of the layer, or null if not about a layer.
+     */
+    public String getLayer() {
+        return layer;
+    }
+
+    /**
+     * @return The output, status, image id or error message, depending on the type.
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return Bytes done so far, for progress.
+     */
+    public long getCurrent() {
+        return current;
+    }
+
+    /**
+     * @return Total bytes, for progress, or 0 if not known.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return type + (layer != null ? " " + layer : "") + ": " + text + (type == Type.PROGRESS ? " " + current + "/" + total : "");
+    }
+}
@@ -0,0 +1,21 @@
+package com.alexecollins.docker.orchestration;
+
+import com.alexecollins.docker.orchestration.model.Id;
+
+/**
+ * Receives every message from the output of builds and pushes, as it is read.
+ */
+public interface ProgressListener {
+
+    ProgressListener NONE = new ProgressListener() {
+        @Override
+        public void onEvent(Id id, ProgressEvent event) {
+        }
+    };
+
+    /**
+     * @param id    Not null.
+     * @param event Not null.
+     */
+    void onEvent(Id id, ProgressEvent event);
+}
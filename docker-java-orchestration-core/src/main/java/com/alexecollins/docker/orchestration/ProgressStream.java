@@ -0,0 +1,214 @@
+package com.alexecollins.docker.orchestration;
+
+import com.alexecollins.docker.orchestration.model.Id;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the JSON message stream from a build or push, passing each message to the listener as it goes.
+ * <p/>
+ * Progress messages are not logged one by one, only when a layer's status changes, so large pushes and pulls do
+ * not flood the log.
+ */
+class ProgressStream {
+    /**
+     * the caller closes the stream
+     */
+    private static final JsonFactory JSON = new JsonFactory().disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+    /**
+     * the whole of a stream message, so a step that prints the phrase does not pass for the end of the build
+     */
+    private static final Pattern BUILT_IMAGE_ID_PATTERN = Pattern.compile("^Successfully built ([0-9a-f]+)\\s*$");
+
+    private final Id id;
+    private final ServiceLog log;
+    private final ProgressListener listener;
+    /**
+     * Last status logged for each layer.
+     */
+    private final Map<String, String> layerStatuses = new HashMap<>();
+    private String imageId;
+
+    ProgressStream(Id id, ServiceLog log, ProgressListener listener) {
+        this.id = id;
+        this.log = log;
+        this.listener = listener;
+    }
+
+    /**
+     * @return The id of the image built, or null if there was none, e.g. for a push.
+     * @throws OrchestrationException If the stream contains an error.
+     */
+    String read(InputStream in) throws IOException {
+        final PushbackInputStream input = new PushbackInputStream(in, 1);
+        int first;
+        do {
+            first = input.read();
+        } while (first != -1 && Character.isWhitespace(first));
+        if (first == -1) {
+            return imageId;
+        }
+        input.unread(first);
+        if (first == '{') {
+            readJson(input);
+        } else {
+            readText(input);
+        }
+        return imageId;
+    }
+
+    /**
+     * Reads each message straight from the stream with one parser, however the messages are split into lines.
+     */
+    private void readJson(InputStream in) throws IOException {
+        try (JsonParser parser = JSON.createParser(in)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token == JsonToken.START_OBJECT) {
+                    readMessage(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    /**
+     * Output that is not JSON, e.g. from an old daemon, is streamed a line at a time.
+     */
+    private void readText(InputStream in) throws IOException {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.isEmpty()) {
+                stream(line);
+            }
+        }
+    }
+
+    private void readMessage(JsonParser parser) throws IOException {
+        String stream = null, status = null, layer = null, error = null, aux = null;
+        long current = -1, total = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            final JsonToken value = parser.nextToken();
+            switch (field) {
+                case "stream":
+                    stream = parser.getText();
+                    break;
+                case "status":
+                    status = parser.getText();
+                    break;
+                case "id":
+                    layer = parser.getText();
+                    break;
+                case "error":
+                    error = parser.getText();
+                    break;
+                case "errorDetail":
+                    final String message = readField(parser, value, "message");
+                    error = error == null ? message : error;
+                    break;
+                case "aux":
+                    aux = readField(parser, value, "ID");
+                    break;
+                case "progressDetail":
+                    if (value == JsonToken.START_OBJECT) {
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            final String name = parser.getCurrentName();
+                            parser.nextToken();
+                            if ("current".equals(name)) {
+                                current = parser.getLongValue();
+                            } else if ("total".equals(name)) {
+                                total = parser.getLongValue();
+                            } else {
+                                parser.skipChildren();
+                            }
+                        }
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+
+        if (error != null) {
+            fire(new ProgressEvent(ProgressEvent.Type.ERROR, layer, error, 0, 0));
+            log.info(error);
+            throw new OrchestrationException(error);
+        }
+        if (stream != null) {
+            stream(stream);
+        }
+        if (aux != null) {
+            imageId = aux;
+            fire(new ProgressEvent(ProgressEvent.Type.AUX, null, aux, 0, 0));
+        }
+        if (status != null) {
+            if (current >= 0) {
+                fire(new ProgressEvent(ProgressEvent.Type.PROGRESS, layer, status, current, total));
+            } else {
+                fire(new ProgressEvent(ProgressEvent.Type.STATUS, layer, status, 0, 0));
+            }
+            status(layer, status);
+        }
+    }
+
+    /**
+     * @return The value of the field of an object, skipping the rest of it.
+     */
+    private static String readField(JsonParser parser, JsonToken value, String name) throws IOException {
+        if (value != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        String out = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            parser.nextToken();
+            if (name.equals(field)) {
+                out = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return out;
+    }
+
+    private void stream(String text) {
+        final Matcher matcher = BUILT_IMAGE_ID_PATTERN.matcher(text);
+        if (matcher.find()) {
+            imageId = matcher.group(1);
+        }
+        fire(new ProgressEvent(ProgressEvent.Type.STREAM, null, text, 0, 0));
+        final String trimmed = text.replaceFirst("\\s+$", "");
+        if (!trimmed.isEmpty()) {
+            log.info(trimmed);
+        }
+    }
+
+    private void status(String layer, String status) {
+        if (layer == null) {
+            log.info(status);
+        } else if (!status.equals(layerStatuses.put(layer, status))) {
+            log.info(layer + ": " + status);
+        }
+    }
+
+    private void fire(ProgressEvent event) {
+        listener.onEvent(id, event);
+    }
+}
@@ -3,6 +3,8 @@ package com.alexecollins.docker.orchestration;
 import com.alexecollins.docker.orchestration.model.Conf;
 import com.alexecollins.docker.orchestration.model.ContainerConf;
 import com.alexecollins.docker.orchestration.model.Id;
+import com.alexecollins.docker.orchestration.util.CompiledTokenResolver;
+import com.alexecollins.docker.orchestration.util.TextFiles;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
@@ -13,10 +15,8 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
-import java.util.Collections;
-import java.util.Iterator;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -31,12 +31,34 @@ class Repo {
     private final String project;
     private final File src;
     private final Map<Id, Conf> confs = new LinkedHashMap<>();
+    private final Map<Id, List<Id>> links = new LinkedHashMap<>();
+    /**
+     * Sorted the first time it is needed, so a repo with bad links can still be created.
+     */
+    private DependencyGraph graph;
 
     /**
      * @param user Name of the repo use. Maybe null.
      */
-    @SuppressWarnings("ConstantConditions")
     Repo(String user, String project, File src, Properties properties) {
+        this(user, project, src, properties != null ? new CompiledTokenResolver(properties) : null);
+    }
+
+    /**
+     * @param user     Name of the repo use. Maybe null.
+     * @param resolver Resolves the tokens in the configuration files.
+     */
+    Repo(String user, String project, File src, CompiledTokenResolver resolver) {
+        this(user, project, src, resolver, TextFiles.UTF_8);
+    }
+
+    /**
+     * @param user      Name of the repo use. Maybe null.
+     * @param resolver  Resolves the tokens in the configuration files.
+     * @param textFiles The charset of the configuration files.
+     */
+    @SuppressWarnings("ConstantConditions")
+    Repo(String user, String project, File src, CompiledTokenResolver resolver, TextFiles textFiles) {
         if (user == null) {
             throw new IllegalArgumentException("user is null");
         }
@@ -49,8 +71,11 @@ class Repo {
         if (!src.isDirectory()) {
             throw new IllegalArgumentException("src " + src + " does not exist or is directory");
         }
-        if (properties == null) {
-            throw new IllegalArgumentException("properties is null");
+        if (resolver == null) {
+            throw new IllegalArgumentException("resolver is null");
+        }
+        if (textFiles == null) {
+            throw new IllegalArgumentException("textFiles is null");
         }
 
         this.user = user;
@@ -58,36 +83,40 @@ class Repo {
         this.src = src;
 
         if (src.isDirectory()) {
-            readDockerConf(src, properties);
+            readDockerConf(src, resolver, textFiles);
             ensureEmptyFolderConfs(src);
-            readChildConfs(src, properties);
+            readChildConfs(src, resolver, textFiles);
+        }
+
+        for (Id id : confs.keySet()) {
+            links.put(id, com.alexecollins.docker.orchestration.util.Links.ids(confs.get(id).getLinks()));
         }
     }
 
-    private static Conf readConfFile(File confFile, Properties properties) throws IOException {
-        return confFile.length() > 0 ? MAPPER.readValue(Confs.replacingReader(confFile, properties), Conf.class) : new Conf();
+    private static Conf readConfFile(File confFile, CompiledTokenResolver resolver, TextFiles textFiles) throws IOException {
+        return confFile.length() > 0 ? MAPPER.readValue(Confs.replacingReader(confFile, resolver, textFiles), Conf.class) : new Conf();
     }
 
-    private void readDockerConf(File src, Properties properties) {
+    private void readDockerConf(File src, CompiledTokenResolver resolver, TextFiles textFiles) {
         // prioritise the docker.yml, especially for ordering
         File dockerConf = new File(src, "docker.yml");
         if (dockerConf.exists()) {
             LOG.info("reading " + dockerConf);
             try {
-                confs.putAll(Confs.read(dockerConf, properties));
+                confs.putAll(Confs.read(dockerConf, resolver, textFiles));
             } catch (IOException e) {
                 throw new OrchestrationException(e);
             }
         }
     }
 
-    private void readChildConfs(File src, Properties properties) {
+    private void readChildConfs(File src, CompiledTokenResolver resolver, TextFiles textFiles) {
         for (Id id : confs.keySet()) {
             File confFile = new File(src, id + "/conf.yml");
             if (confFile.exists()) {
                 LOG.info("reading " + confFile);
                 try {
-                    confs.put(id, readConfFile(confFile, properties));
+                    confs.put(id, readConfFile(confFile, resolver, textFiles));
                 } catch (IOException e) {
                     throw new OrchestrationException(e);
                 }
@@ -112,6 +141,10 @@ class Repo {
                         : imageName(id);
     }
 
+    String project() {
+        return project;
+    }
+
     String imageName(Id id) {
         return user + "/" + project + "_" + id;
     }
@@ -134,41 +167,37 @@ class Repo {
         return new File(src(), id.toString());
     }
 
-    List<Id> ids(boolean reverse) {
-
-        final Map<Id, List<Id>> links = new LinkedHashMap<>();
-        for (Id id : confs.keySet()) {
-            links.put(id, com.alexecollins.docker.orchestration.util.Links.ids(confs.get(id).getLinks()));
+    /**
+     * @throws IllegalStateException If the links are circular, or link to an id that is not in the repo.
+     */
+    private synchronized DependencyGraph graph() {
+        if (graph == null) {
+            graph = DependencyGraph.of(links);
         }
+        return graph;
+    }
 
-        final List<Id> out = sort(links);
-        if (reverse) {
-            Collections.reverse(out);
-        }
+    List<Id> ids(boolean reverse) {
+        return graph().ids(reverse);
+    }
+
+    /**
+     * Groups the ids into levels, where each id only links to ids in earlier levels, so all the ids in a
+     * level can be acted on at the same time.
+     */
+    List<List<Id>> levels(boolean reverse) {
+        return graph().levels(reverse);
+    }
 
-        return out;
+    /**
+     * @return The ids the id links to.
+     */
+    List<Id> links(Id id) {
+        return graph().links(id);
     }
 
     List<Id> sort(final Map<Id, List<Id>> links) {
-        final List<Id> in = new LinkedList<>(links.keySet());
-        final List<Id> out = new LinkedList<>();
-
-        while (!in.isEmpty()) {
-            boolean hit = false;
-            for (Iterator<Id> iterator = in.iterator(); iterator.hasNext(); ) {
-                final Id id = iterator.next();
-                if (out.containsAll(links.get(id))) {
-                    out.add(id);
-                    iterator.remove();
-                    hit = true;
-                }
-            }
-            if (!hit) {
-                throw new IllegalStateException("dependency error (e.g. circular dependency) amongst " + in);
-            }
-        }
-
-        return out;
+        return new ArrayList<>(DependencyGraph.of(links).ids(false));
     }
 
     Conf conf(Id id) {
@@ -0,0 +1,46 @@
+package com.alexecollins.docker.orchestration;
+
+import com.alexecollins.docker.orchestration.model.Id;
+import org.slf4j.Logger;
+
+/**
+ * Where the output for a single service goes. When services are worked on in parallel, the output is held back
+ * and written as one block once the service is done, so the output of different services is not mixed up.
+ */
+class ServiceLog {
+    private final Logger logger;
+    private final Id id;
+    private final StringBuilder buffer;
+
+    private ServiceLog(Logger logger, Id id, StringBuilder buffer) {
+        this.logger = logger;
+        this.id = id;
+        this.buffer = buffer;
+    }
+
+    static ServiceLog direct(Logger logger) {
+        return new ServiceLog(logger, null, null);
+    }
+
+    static ServiceLog buffered(Logger logger, Id id) {
+        return new ServiceLog(logger, id, new StringBuilder());
+    }
+
+    void info(String message) {
+        if (buffer == null) {
+            logger.info(message);
+        } else {
+            buffer.append(String.format("%n%s", message));
+        }
+    }
+
+    /**
+     * Writes out anything held back, does nothing if not buffered.
+     */
+    void flush() {
+        if (buffer != null && buffer.length() > 0) {
+            logger.info(String.format("Log for %s:%s", id, buffer));
+            buffer.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.alexecollins.docker.orchestration.util;
+
+import java.util.Map;
+
+/**
+ * An immutable open addressing hash table of strings that can be looked up by a range of a char array, without
+ * making a string of it.
+ */
+final class CharTable {
+    static final CharTable EMPTY = new CharTable(new String[2], new String[2], 0);
+
+    private final String[] keys;
+    private final String[] values;
+    private final int size;
+
+    private CharTable(String[] keys, String[] values, int size) {
+        this.keys = keys;
+        this.values = values;
+        this.size = size;
+    }
+
+    static CharTable of(Map<String, String> entries) {
+        final int capacity = capacity(entries.size());
+        final String[] keys = new String[capacity];
+        final String[] values = new String[capacity];
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            put(keys, values, entry.getKey(), entry.getValue());
+        }
+        return new CharTable(keys, values, entries.size());
+    }
+
+    /**
+     * @return A copy of this table with the entry added.
+     */
+    CharTable with(String key, String value) {
+        final int capacity = capacity(size + 1);
+        final String[] keys = new String[capacity];
+        final String[] values = new String[capacity];
+        for (int i = 0; i < this.keys.length; i++) {
+            if (this.keys[i] != null) {
+                put(keys, values, this.keys[i], this.values[i]);
+            }
+        }
+        put(keys, values, key, value);
+        return new CharTable(keys, values, size + 1);
+    }
+
+    String get(char[] chars, int offset, int length) {
+        final int mask = keys.length - 1;
+        int i = spread(hash(chars, offset, length)) & mask;
+        String key;
+        while ((key = keys[i]) != null) {
+            if (matches(key, chars, offset, length)) {
+                return values[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * at most half full, so a miss is found quickly
+     */
+    private static int capacity(int size) {
+        int capacity = 2;
+        while (capacity < size * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static void put(String[] keys, String[] values, String key, String value) {
+        final int mask = keys.length - 1;
+        int i = spread(key.hashCode()) & mask;
+        while (keys[i] != null && !keys[i].equals(key)) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+    }
+
+    /**
+     * The same as {@link String#hashCode()}, so the hash of a key is cached by its string.
+     */
+    private static int hash(char[] chars, int offset, int length) {
+        int h = 0;
+        for (int i = offset; i < offset + length; i++) {
+            h = 31 * h + chars[i];
+        }
+        return h;
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean matches(String key, char[] chars, int offset, int length) {
+        if (key.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (key.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,75 @@
+package com.alexecollins.docker.orchestration.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Resolves tokens from a snapshot of properties taken when it is created, so one can be shared by every thread and
+ * reused for every file. Tokens are looked up without making a string of their name.
+ * <p/>
+ * A token of the form <code>${name:-default}</code> resolves to the default if there is no such property, or it is
+ * empty.
+ */
+public final class CompiledTokenResolver implements TokenResolver {
+    private static final String DEFAULT_SEPARATOR = ":-";
+
+    private final CharTable values;
+    /**
+     * default values seen so far, so each is only made into a string once
+     */
+    private volatile CharTable defaults = CharTable.EMPTY;
+
+    public CompiledTokenResolver(Properties properties) {
+        if (properties == null) {
+            throw new IllegalArgumentException("properties is null");
+        }
+        final Map<String, String> values = new HashMap<>();
+        for (Map.Entry<Object, Object> entry : properties.entrySet()) {
+            values.put(entry.getKey().toString(), entry.getValue().toString());
+        }
+        this.values = CharTable.of(values);
+    }
+
+    @Override
+    public String resolveToken(String tokenName) {
+        return resolveToken(tokenName.toCharArray(), 0, tokenName.length());
+    }
+
+    @Override
+    public String resolveToken(char[] chars, int offset, int length) {
+        final String value = values.get(chars, offset, length);
+        if (value != null) {
+            return value;
+        }
+        final int separator = indexOfSeparator(chars, offset, length);
+        if (separator < 0) {
+            return null;
+        }
+        final String named = values.get(chars, offset, separator - offset);
+        if (named != null && !named.isEmpty()) {
+            return named;
+        }
+        final int start = separator + DEFAULT_SEPARATOR.length();
+        final int end = offset + length;
+        String defaultValue = defaults.get(chars, start, end - start);
+        if (defaultValue == null) {
+            defaultValue = new String(chars, start, end - start);
+            synchronized (this) {
+                if (defaults.get(chars, start, end - start) == null) {
+                    defaults = defaults.with(defaultValue, defaultValue);
+                }
+            }
+        }
+        return defaultValue;
+    }
+
+    private static int indexOfSeparator(char[] chars, int offset, int length) {
+        for (int i = offset; i < offset + length - 1; i++) {
+            if (chars[i] == ':' && chars[i + 1] == '-') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,104 @@
+package com.alexecollins.docker.orchestration.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+
+/**
+ * Decodes bytes from a channel, or from a buffer that holds all of them, such as a mapped file.
+ * <p/>
+ * The bytes are decoded from a heap buffer, even when they come from a mapped file, as the JDK's decoders only have
+ * fast paths for buffers backed by an array.
+ */
+final class DecodingReader extends Reader {
+    private final ReadableByteChannel channel;
+    private final ByteBuffer source;
+    private final ByteBuffer bytes;
+    private final CharBuffer chars;
+    private final CharsetDecoder decoder;
+    private boolean endOfInput;
+    private boolean flushed;
+
+    DecodingReader(ReadableByteChannel channel, CharsetDecoder decoder, int bufferSize) {
+        this(channel, null, decoder, bufferSize);
+    }
+
+    DecodingReader(ByteBuffer source, CharsetDecoder decoder, int bufferSize) {
+        this(null, source, decoder, bufferSize);
+    }
+
+    private DecodingReader(ReadableByteChannel channel, ByteBuffer source, CharsetDecoder decoder, int bufferSize) {
+        this.channel = channel;
+        this.source = source;
+        this.decoder = decoder;
+        this.bytes = ByteBuffer.allocate(bufferSize);
+        this.bytes.flip();
+        this.chars = CharBuffer.allocate(bufferSize);
+        this.chars.flip();
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!chars.hasRemaining() && !fill()) {
+            return -1;
+        }
+        final int n = Math.min(len, chars.remaining());
+        chars.get(cbuf, off, n);
+        return n;
+    }
+
+    /**
+     * @return False at the end of the input.
+     */
+    private boolean fill() throws IOException {
+        chars.clear();
+        try {
+            while (chars.position() == 0 && !flushed) {
+                final CoderResult result = decoder.decode(bytes, chars, endOfInput);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                if (chars.position() > 0) {
+                    break;
+                }
+                if (endOfInput) {
+                    decoder.flush(chars);
+                    flushed = true;
+                } else {
+                    readBytes();
+                }
+            }
+        } finally {
+            chars.flip();
+        }
+        return chars.hasRemaining();
+    }
+
+    private void readBytes() throws IOException {
+        bytes.compact();
+        if (channel != null) {
+            endOfInput = channel.read(bytes) == -1;
+        } else {
+            final ByteBuffer chunk = source.duplicate();
+            chunk.limit(chunk.position() + Math.min(bytes.remaining(), source.remaining()));
+            bytes.put(chunk);
+            source.position(chunk.position());
+            endOfInput = !source.hasRemaining();
+        }
+        bytes.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.alexecollins.docker.orchestration.util;
+
+/**
+ * What {@link Filters#filterWithStats(java.io.File, java.io.FileFilter, java.util.Properties)} did.
+ */
+public final class FilterStats {
+    private int files;
+    private long bytes;
+    private int skipped;
+
+    FilterStats() {
+    }
+
+    synchronized void filtered(long size) {
+        files++;
+        bytes += size;
+    }
+
+    synchronized void skipped() {
+        skipped++;
+    }
+
+    /**
+     * @return The number of files rewritten with their tokens replaced.
+     */
+    public synchronized int getFiles() {
+        return files;
+    }
+
+    /**
+     * @return The size of the files rewritten, before filtering.
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return The number of files left as they were, as they had no tokens, or none that could be replaced.
+     */
+    public synchronized int getSkipped() {
+        return skipped;
+    }
+}
@@ -3,23 +3,145 @@ package com.alexecollins.docker.orchestration.util;
 
 import org.apache.commons.io.IOUtils;
 
-import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileFilter;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringReader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.SortedMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static org.apache.commons.io.FileUtils.copyFile;
+import static org.apache.commons.io.FileUtils.forceMkdir;
 
 public final class Filters {
     private Filters() {
     }
 
+    /**
+     * Filters the files in UTF-8, one at a time.
+     */
     public static void filter(File file, FileFilter fileFilter, Properties properties) throws IOException {
+        filterWithStats(file, fileFilter, properties);
+    }
+
+    /**
+     * Like {@link #filter(File, FileFilter, Properties)}, but says what was filtered.
+     */
+    public static FilterStats filterWithStats(File file, FileFilter fileFilter, Properties properties) throws IOException {
+        if (properties == null) {
+            throw new IllegalArgumentException("properties is null");
+        }
+        return filter(file, fileFilter, new CompiledTokenResolver(properties), TextFiles.UTF_8, 1);
+    }
+
+    /**
+     * Like {@link #filterWithStats(File, FileFilter, Properties)}, but with a resolver that can be shared, in the charset of
+     * the text files, and on a fork/join pool.
+     *
+     * @param parallelism How many files to filter at once. If 1, the files are filtered on this thread.
+     * @throws IOException If any file cannot be filtered, once every other file has been. It is the failure of the
+     *                     first such file by path, with the failures of the others suppressed.
+     */
+    public static FilterStats filter(File file, FileFilter fileFilter, CompiledTokenResolver resolver, TextFiles textFiles, int parallelism) throws IOException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        validate(file, fileFilter, resolver, textFiles);
+
+        final FilterStats stats = new FilterStats();
+        if (parallelism == 1) {
+            filter(file, fileFilter, resolver, textFiles, stats);
+            return stats;
+        }
+        final SortedMap<File, IOException> failures = new ConcurrentSkipListMap<>();
+        final ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new FilterTask(file, fileFilter, resolver, textFiles, stats, failures));
+        } finally {
+            pool.shutdown();
+        }
+
+        if (!failures.isEmpty()) {
+            final Iterator<Map.Entry<File, IOException>> i = failures.entrySet().iterator();
+            final Map.Entry<File, IOException> first = i.next();
+            final IOException e = new IOException("failed to filter " + failures.size() + " file(s), first " + first.getKey(), first.getValue());
+            while (i.hasNext()) {
+                e.addSuppressed(i.next().getValue());
+            }
+            throw e;
+        }
+        return stats;
+    }
+
+    /**
+     * Copies a file, or a directory and everything in it, filtering the accepted files as they are copied, so the
+     * source is read once and left as it is. Files already at the destination are replaced, not written into, so the
+     * source is left as it is even if they are hard links to it. A file with no tokens that could be replaced keeps the modified time of
+     * its source, as a plain copy would.
+     *
+     * @param include Which files and directories in the source directory to copy.
+     */
+    public static FilterStats copy(File src, File dest, FileFilter include, FileFilter fileFilter, CompiledTokenResolver resolver, TextFiles textFiles) throws IOException {
+        validate(src, fileFilter, resolver, textFiles);
+        if (dest == null) {
+            throw new IllegalArgumentException("dest is null");
+        }
+        if (include == null) {
+            throw new IllegalArgumentException("include is null");
+        }
+
+        final FilterStats stats = new FilterStats();
+        copy(src, dest, include, fileFilter, resolver, textFiles, stats);
+        return stats;
+    }
+
+    private static void copy(File src, File dest, FileFilter include, FileFilter fileFilter, TokenResolver resolver, TextFiles textFiles, FilterStats stats) throws IOException {
+        if (src.isDirectory()) {
+            forceMkdir(dest);
+            final File[] children = src.listFiles(include);
+            if (children == null) {
+                throw new IOException("cannot list " + src);
+            }
+            for (File child : children) {
+                copy(child, new File(dest, child.getName()), include, fileFilter, resolver, textFiles, stats);
+            }
+        } else if (fileFilter.accept(src)) {
+            final int replacements;
+            try (TokenReplacingReader in = new TokenReplacingReader(textFiles.reader(src), resolver)) {
+                try (Writer out = textFiles.writer(dest)) {
+                    IOUtils.copy(in, out);
+                }
+                replacements = in.getReplacements();
+            }
+
+            if (replacements == 0) {
+                //noinspection ResultOfMethodCallIgnored
+                dest.setLastModified(src.lastModified());
+                stats.skipped();
+            } else {
+                stats.filtered(src.length());
+            }
+        } else {
+            // a new file, so a hard link is not written through
+            Files.deleteIfExists(dest.toPath());
+            copyFile(src, dest);
+        }
+    }
 
+    private static void validate(File file, FileFilter fileFilter, TokenResolver resolver, TextFiles textFiles) {
         if (file == null) {
             throw new IllegalArgumentException("file is null");
         }
@@ -29,29 +151,88 @@ public final class Filters {
         if (fileFilter == null) {
             throw new IllegalArgumentException("fileFilter is null");
         }
-        if (properties == null) {
-            throw new IllegalArgumentException("properties is null");
+        if (resolver == null) {
+            throw new IllegalArgumentException("resolver is null");
         }
+        if (textFiles == null) {
+            throw new IllegalArgumentException("textFiles is null");
+        }
+    }
 
+    private static void filter(File file, FileFilter fileFilter, TokenResolver resolver, TextFiles textFiles, FilterStats stats) throws IOException {
         if (file.isDirectory()) {
             //noinspection ConstantConditions
             for (File child : file.listFiles()) {
-                filter(child, fileFilter, properties);
+                filter(child, fileFilter, resolver, textFiles, stats);
             }
         } else if (fileFilter.accept(file)) {
-            final File outFile = new File(file + ".tmp");
-            try (TokenReplacingReader in = new TokenReplacingReader(new BufferedReader(new FileReader(file)),
-                    new PropertiesTokenResolver(properties))) {
-                try (FileWriter out = new FileWriter(outFile)) {
-                    IOUtils.copy(in, out);
+            filterFile(file, resolver, textFiles, stats);
+        }
+    }
+
+    private static void filterFile(File file, TokenResolver resolver, TextFiles textFiles, FilterStats stats) throws IOException {
+        if (textFiles.hasAsciiTokens() && !containsToken(file)) {
+            stats.skipped();
+            return;
+        }
+        final File outFile = new File(file + ".tmp");
+        final int replacements;
+        try (TokenReplacingReader in = new TokenReplacingReader(textFiles.reader(file), resolver)) {
+            try (Writer out = textFiles.writer(outFile)) {
+                IOUtils.copy(in, out);
+            }
+            replacements = in.getReplacements();
+        }
+
+        if (replacements == 0) {
+            // only unresolved tokens, so the output is the same as the file
+            //noinspection ResultOfMethodCallIgnored
+            outFile.delete();
+            stats.skipped();
+            return;
+        }
+        stats.filtered(file.length());
+        move(outFile, file);
+    }
+
+    /**
+     * Looks for the bytes of "${", if they are the same in the charset of the files.
+     * <p/>
+     * The file is read rather than memory mapped, as a mapped file cannot be replaced on Windows until the mapping
+     * has been garbage collected.
+     */
+    static boolean containsToken(File file) throws IOException {
+        final byte[] buffer = new byte[8192];
+        try (InputStream in = new FileInputStream(file)) {
+            boolean dollar = false;
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                for (int i = 0; i < n; i++) {
+                    if (dollar && buffer[i] == '{') {
+                        return true;
+                    }
+                    dollar = buffer[i] == '$';
                 }
             }
+        }
+        return false;
+    }
 
-            move(outFile, file);
+    public static String filter(String l, CompiledTokenResolver resolver) {
+        if (!l.contains("${")) {
+            return l;
+        }
+        try {
+            return IOUtils.toString(new TokenReplacingReader(new StringReader(l), resolver));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
     }
 
     public static String filter(String l, Properties properties) {
+        if (!l.contains("${")) {
+            return l;
+        }
         try {
             return IOUtils.toString(new TokenReplacingReader(
                     new StringReader(l),
@@ -81,4 +262,48 @@ public final class Filters {
         t.addAll(properties.keySet());
         return t.last().toString().length();
     }
+
+    /**
+     * Filters a file, or forks a task for each child of a directory. A file that cannot be filtered is recorded
+     * rather than thrown, so the other files are still filtered.
+     */
+    private static class FilterTask extends RecursiveAction {
+        private final File file;
+        private final FileFilter fileFilter;
+        private final TokenResolver resolver;
+        private final TextFiles textFiles;
+        private final FilterStats stats;
+        private final Map<File, IOException> failures;
+
+        FilterTask(File file, FileFilter fileFilter, TokenResolver resolver, TextFiles textFiles, FilterStats stats, Map<File, IOException> failures) {
+            this.file = file;
+            this.fileFilter = fileFilter;
+            this.resolver = resolver;
+            this.textFiles = textFiles;
+            this.stats = stats;
+            this.failures = failures;
+        }
+
+        @Override
+        protected void compute() {
+            if (file.isDirectory()) {
+                final File[] children = file.listFiles();
+                if (children == null) {
+                    failures.put(file, new IOException("cannot list " + file));
+                    return;
+                }
+                final List<FilterTask> tasks = new ArrayList<>(children.length);
+                for (File child : children) {
+                    tasks.add(new FilterTask(child, fileFilter, resolver, textFiles, stats, failures));
+                }
+                invokeAll(tasks);
+            } else if (fileFilter.accept(file)) {
+                try {
+                    filterFile(file, resolver, textFiles, stats);
+                } catch (IOException e) {
+                    failures.put(file, e);
+                }
+            }
+        }
+    }
 }
@@ -16,4 +16,9 @@ public class PropertiesTokenResolver implements TokenResolver {
         final Object value = properties.get(tokenName);
         return (value == null) ? null : value.toString();
     }
+
+    @Override
+    public String resolveToken(char[] chars, int offset, int length) {
+        return resolveToken(new String(chars, offset, length));
+    }
 }
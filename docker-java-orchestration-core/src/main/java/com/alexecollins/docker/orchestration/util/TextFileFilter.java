@@ -3,18 +3,96 @@ package com.alexecollins.docker.orchestration.util;
 
 import java.io.File;
 import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
 
 /**
  * Filter text files.
+ * <p/>
+ * A file is text if it is a Dockerfile, or has one of the text extensions. If sniffing, a file with any other
+ * extension, apart from well known binary ones, is text if its first few KB look like text, and a file with a text
+ * extension is not if they do not.
  */
 public class TextFileFilter implements FileFilter {
-    public static final TextFileFilter INSTANCE = new TextFileFilter();
+    public static final List<String> DEFAULT_EXTENSIONS = Collections.unmodifiableList(Arrays.asList(
+            "cfg", "conf", "json", "properties", "sh", "txt", "xml", "yaml", "yml"));
+    public static final TextFileFilter INSTANCE = new TextFileFilter(DEFAULT_EXTENSIONS, false);
 
-    private TextFileFilter() {
+    private static final Pattern BINARY = pattern(Arrays.asList(
+            "bin", "class", "dll", "ear", "exe", "gif", "gz", "ico", "jar", "jpeg", "jpg", "pdf", "png", "so", "tar",
+            "tgz", "war", "zip"));
+    /**
+     * the same as Git looks at
+     */
+    private static final int SNIFF_SIZE = 8000;
+
+    private final Pattern text;
+    private final boolean sniff;
+
+    /**
+     * @param extensions The extensions of text files, without the dot.
+     * @param sniff      If true, look at the content of files to decide if they are text.
+     */
+    public TextFileFilter(Collection<String> extensions, boolean sniff) {
+        if (extensions == null) {
+            throw new IllegalArgumentException("extensions is null");
+        }
+        this.text = pattern(extensions);
+        this.sniff = sniff;
+    }
+
+    private static Pattern pattern(Collection<String> extensions) {
+        final StringBuilder regex = new StringBuilder("Dockerfile");
+        if (!extensions.isEmpty()) {
+            regex.append("|.*\\.(");
+            String separator = "";
+            for (String extension : extensions) {
+                regex.append(separator).append(Pattern.quote(extension));
+                separator = "|";
+            }
+            regex.append(")");
+        }
+        return Pattern.compile(regex.toString());
     }
 
     @Override
     public boolean accept(File pathname) {
-        return pathname.isFile() && pathname.getName().matches("Dockerfile|.*\\.(cfg|conf|json|properties|sh|txt|xml|yaml|yml)");
+        if (!pathname.isFile()) {
+            return false;
+        }
+        final String name = pathname.getName();
+        if (text.matcher(name).matches()) {
+            return !sniff || looksLikeText(pathname);
+        }
+        return sniff && !BINARY.matcher(name).matches() && looksLikeText(pathname);
+    }
+
+    /**
+     * @return True if there is no NUL byte in the start of the file, which there is in nearly every binary file,
+     * and in no text file, except in UTF-16 or UTF-32.
+     */
+    private static boolean looksLikeText(File file) {
+        final byte[] buffer = new byte[SNIFF_SIZE];
+        try (InputStream in = new FileInputStream(file)) {
+            int total = 0;
+            int n;
+            while (total < buffer.length && (n = in.read(buffer, total, buffer.length - total)) != -1) {
+                total += n;
+            }
+            for (int i = 0; i < total; i++) {
+                if (buffer[i] == 0) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
     }
 }
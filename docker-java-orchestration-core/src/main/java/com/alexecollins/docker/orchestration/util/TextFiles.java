@@ -0,0 +1,118 @@
+package com.alexecollins.docker.orchestration.util;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * How filtered files are read and written: in a given charset, rather than the platform's, so the output is the same
+ * on every machine. As with {@link java.io.FileReader}, bytes that are not valid in the charset are replaced.
+ */
+public final class TextFiles {
+    public static final TextFiles UTF_8 = new TextFiles(StandardCharsets.UTF_8, Long.MAX_VALUE);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Charset charset;
+    private final long mapThreshold;
+    /**
+     * if "${" is the same two bytes in this charset, files can be scanned for it without decoding them
+     */
+    private final boolean asciiTokens;
+
+    /**
+     * @param mapThreshold Files of at least this many bytes are memory mapped rather than read through a buffer.
+     *                     On Windows, a mapped file cannot be replaced until the mapping has been garbage collected.
+     */
+    public TextFiles(Charset charset, long mapThreshold) {
+        if (charset == null) {
+            throw new IllegalArgumentException("charset is null");
+        }
+        if (mapThreshold < 0) {
+            throw new IllegalArgumentException("mapThreshold is negative");
+        }
+        this.charset = charset;
+        this.mapThreshold = mapThreshold;
+        this.asciiTokens = Arrays.equals("${".getBytes(charset), new byte[]{'$', '{'});
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public long getMapThreshold() {
+        return mapThreshold;
+    }
+
+    boolean hasAsciiTokens() {
+        return asciiTokens;
+    }
+
+    public Reader reader(File file) throws IOException {
+        final FileChannel channel = FileChannel.open(file.toPath(), READ);
+        final long size = channel.size();
+        if (size >= mapThreshold && size <= Integer.MAX_VALUE) {
+            // the mapping stays valid once the channel is closed
+            try {
+                return new DecodingReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), decoder(), BUFFER_SIZE);
+            } finally {
+                channel.close();
+            }
+        }
+        return new DecodingReader(channel, decoder(), BUFFER_SIZE);
+    }
+
+    /**
+     * Writes a new file in place of any that is there, so a file that is a hard link, e.g. to a packaged file, is
+     * unlinked rather than written through.
+     */
+    public Writer writer(File file) throws IOException {
+        final Path path = file.toPath();
+        if (!Files.isDirectory(path, NOFOLLOW_LINKS)) {
+            Files.deleteIfExists(path);
+        }
+        return Channels.newWriter(FileChannel.open(path, WRITE, CREATE_NEW), encoder(), BUFFER_SIZE);
+    }
+
+    public String read(File file) throws IOException {
+        try (Reader in = reader(file)) {
+            return IOUtils.toString(in);
+        }
+    }
+
+    public void write(File file, String text) throws IOException {
+        try (Writer out = writer(file)) {
+            out.write(text);
+        }
+    }
+
+    private CharsetDecoder decoder() {
+        return charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    private CharsetEncoder encoder() {
+        return charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+}
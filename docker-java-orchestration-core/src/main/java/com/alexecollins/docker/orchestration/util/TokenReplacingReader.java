@@ -1,15 +1,22 @@
 package com.alexecollins.docker.orchestration.util;
 
 import java.io.IOException;
-import java.io.PushbackReader;
 import java.io.Reader;
 import java.nio.CharBuffer;
+import java.util.Arrays;
 
 /**
  * <p>
  * A token replacing reader which replaces tokens of the form
  * <code>${tokenName}</code>. The replacement value is provided by an
- * implementation of the interface {@link TokenResolver}.
+ * implementation of the interface {@link TokenResolver}. Tokens that cannot be
+ * resolved are left as they are, as is a <code>${</code> with no closing
+ * <code>}</code>.
+ * </p>
+ * <p/>
+ * <p>
+ * The source is read a buffer at a time, and the text between tokens is copied
+ * in bulk.
  * </p>
  * <p/>
  * <p>
@@ -20,84 +27,197 @@ import java.nio.CharBuffer;
  * @author Jakob Jenkov
  */
 public class TokenReplacingReader extends Reader {
-    private final StringBuilder tokenNameBuffer = new StringBuilder();
-    private PushbackReader pushbackReader = null;
-    private TokenResolver tokenResolver = null;
+    private static final int BUFFER_SIZE = 8192;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private final char[] single = new char[1];
+    private final Reader source;
+    private final TokenResolver tokenResolver;
+    /**
+     * the unread part of the buffer is from pos to limit
+     */
+    private int pos;
+    private int limit;
+    private boolean eof;
+    /**
+     * the name of a token that spans more than one buffer
+     */
+    private char[] tokenName = new char[64];
+    private int tokenNameLength;
     private String tokenValue = null;
     private int tokenValueIndex = 0;
+    private int replacements;
 
     public TokenReplacingReader(Reader source, TokenResolver resolver) {
-        this.pushbackReader = new PushbackReader(source, 2);
+        this.source = source;
         this.tokenResolver = resolver;
     }
 
     public int read(@SuppressWarnings("NullableProblems") CharBuffer target) throws IOException {
-        throw new RuntimeException("Operation Not Supported");
+        final int len = target.remaining();
+        if (len == 0) {
+            return 0;
+        }
+        if (target.hasArray()) {
+            final int n = read(target.array(), target.arrayOffset() + target.position(), len);
+            if (n > 0) {
+                target.position(target.position() + n);
+            }
+            return n;
+        }
+        final char[] chars = new char[Math.min(len, BUFFER_SIZE)];
+        final int n = read(chars, 0, chars.length);
+        if (n > 0) {
+            target.put(chars, 0, n);
+        }
+        return n;
     }
 
     public int read() throws IOException {
-        if (this.tokenValue != null) {
-            if (this.tokenValueIndex < this.tokenValue.length()) {
-                return this.tokenValue.charAt(this.tokenValueIndex++);
+        return read(single, 0, 1) == -1 ? -1 : single[0];
+    }
+
+    public int read(@SuppressWarnings("NullableProblems") char cbuf[]) throws IOException {
+        return read(cbuf, 0, cbuf.length);
+    }
+
+    public int read(@SuppressWarnings("NullableProblems") char cbuf[], int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > cbuf.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        int charsRead = 0;
+        while (charsRead < len) {
+            if (this.tokenValue != null) {
+                final int n = Math.min(len - charsRead, this.tokenValue.length() - this.tokenValueIndex);
+                this.tokenValue.getChars(this.tokenValueIndex, this.tokenValueIndex + n, cbuf, off + charsRead);
+                charsRead += n;
+                this.tokenValueIndex += n;
+                if (this.tokenValueIndex == this.tokenValue.length()) {
+                    this.tokenValue = null;
+                    this.tokenValueIndex = 0;
+                }
+                continue;
             }
-            if (this.tokenValueIndex == this.tokenValue.length()) {
-                this.tokenValue = null;
-                this.tokenValueIndex = 0;
+
+            if (this.pos == this.limit) {
+                // do not block for more if there is something to return
+                if (charsRead > 0 || !fill()) {
+                    break;
+                }
+            }
+
+            // copy everything up to the next '$' in one go
+            final int end = Math.min(this.limit, this.pos + len - charsRead);
+            int i = this.pos;
+            while (i < end && this.buffer[i] != '$') {
+                i++;
+            }
+            if (i > this.pos) {
+                System.arraycopy(this.buffer, this.pos, cbuf, off + charsRead, i - this.pos);
+                charsRead += i - this.pos;
+                this.pos = i;
+                continue;
             }
-        }
 
-        int data = this.pushbackReader.read();
-        if (data != '$')
-            return data;
+            this.pos++;
+            if (!ensure() || this.buffer[this.pos] != '{') {
+                cbuf[off + charsRead++] = '$';
+                continue;
+            }
+            this.pos++;
+            readToken();
+        }
+        return charsRead == 0 ? -1 : charsRead;
+    }
 
-        data = this.pushbackReader.read();
-        if (data != '{') {
-            this.pushbackReader.unread(data);
-            return '$';
+    /**
+     * Reads the rest of a token, after the "${", and sets the token value to its replacement.
+     */
+    private void readToken() throws IOException {
+        this.tokenNameLength = 0;
+        while (true) {
+            if (!ensure()) {
+                // no closing brace, so not a token
+                this.tokenValue = "${" + new String(this.tokenName, 0, this.tokenNameLength);
+                return;
+            }
+            int i = this.pos;
+            while (i < this.limit && this.buffer[i] != '}') {
+                i++;
+            }
+            if (i < this.limit && this.tokenNameLength == 0) {
+                // the whole name is in the buffer, so resolve it from there
+                resolve(this.buffer, this.pos, i - this.pos);
+                this.pos = i + 1;
+                return;
+            }
+            appendTokenName(i);
+            this.pos = i;
+            if (i < this.limit) {
+                this.pos++;
+                break;
+            }
         }
-        this.tokenNameBuffer.delete(0, this.tokenNameBuffer.length());
+        resolve(this.tokenName, 0, this.tokenNameLength);
+    }
 
-        data = this.pushbackReader.read();
-        while (data != '}') {
-            this.tokenNameBuffer.append((char) data);
-            data = this.pushbackReader.read();
+    private void appendTokenName(int end) {
+        final int n = end - this.pos;
+        if (this.tokenNameLength + n > this.tokenName.length) {
+            this.tokenName = Arrays.copyOf(this.tokenName, Math.max(this.tokenName.length * 2, this.tokenNameLength + n));
         }
+        System.arraycopy(this.buffer, this.pos, this.tokenName, this.tokenNameLength, n);
+        this.tokenNameLength += n;
+    }
 
-        this.tokenValue = this.tokenResolver.resolveToken(this.tokenNameBuffer
-                .toString());
+    private void resolve(char[] chars, int offset, int length) {
+        this.tokenValue = this.tokenResolver.resolveToken(chars, offset, length);
 
         if (this.tokenValue == null) {
-            this.tokenValue = "${" + this.tokenNameBuffer.toString() + "}";
+            this.tokenValue = "${" + new String(chars, offset, length) + "}";
+        } else {
+            this.replacements++;
         }
         if (this.tokenValue.length() == 0) {
-            return read();
+            this.tokenValue = null;
         }
-        return this.tokenValue.charAt(this.tokenValueIndex++);
-
     }
 
-    public int read(@SuppressWarnings("NullableProblems") char cbuf[]) throws IOException {
-        return read(cbuf, 0, cbuf.length);
+    /**
+     * @return False if there is nothing left to read.
+     */
+    private boolean ensure() throws IOException {
+        return this.pos < this.limit || fill();
     }
 
-    public int read(@SuppressWarnings("NullableProblems") char cbuf[], int off, int len) throws IOException {
-        int charsRead = 0;
-        for (int i = 0; i < len; i++) {
-            int nextChar = read();
-            if (nextChar == -1) {
-                if (charsRead == 0) {
-                    charsRead = -1;
-                }
-                break;
-            }
-            charsRead = i + 1;
-            cbuf[off + i] = (char) nextChar;
+    private boolean fill() throws IOException {
+        if (this.eof) {
+            return false;
+        }
+        int n;
+        do {
+            n = this.source.read(this.buffer, 0, this.buffer.length);
+        } while (n == 0);
+        if (n == -1) {
+            this.eof = true;
+            return false;
         }
-        return charsRead;
+        this.pos = 0;
+        this.limit = n;
+        return true;
+    }
+
+    /**
+     * @return The number of tokens replaced so far. If none, what has been read is the same as the source.
+     */
+    public int getReplacements() {
+        return this.replacements;
     }
 
     public void close() throws IOException {
-        this.pushbackReader.close();
+        this.source.close();
     }
 
     public long skip(long n) throws IOException {
@@ -105,7 +225,7 @@ public class TokenReplacingReader extends Reader {
     }
 
     public boolean ready() throws IOException {
-        return this.pushbackReader.ready();
+        return this.tokenValue != null || this.pos < this.limit || this.source.ready();
     }
 
     public boolean markSupported() {
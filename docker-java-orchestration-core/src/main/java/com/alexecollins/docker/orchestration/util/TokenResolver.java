@@ -2,4 +2,9 @@ package com.alexecollins.docker.orchestration.util;
 
 interface TokenResolver {
     String resolveToken(String tokenName);
+
+    /**
+     * Resolves the token whose name is the range of the chars, which may be reused once this returns.
+     */
+    String resolveToken(char[] chars, int offset, int length);
 }
@@ -2,9 +2,15 @@ package com.alexecollins.docker.orchestration;
 
 import com.alexecollins.docker.orchestration.model.Conf;
 import com.alexecollins.docker.orchestration.model.Id;
+import com.alexecollins.docker.orchestration.util.CompiledTokenResolver;
+import com.alexecollins.docker.orchestration.util.TextFiles;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.Properties;
 
@@ -12,6 +18,9 @@ import static org.junit.Assert.assertEquals;
 
 public class ConfsTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void readConf() throws Exception {
         Properties properties = new Properties();
@@ -26,4 +35,14 @@ public class ConfsTest {
         assertEquals("foo", conf.getPackaging().getAdd().get(0).getPath());
 
     }
+
+    @Test
+    public void readConfInCharset() throws Exception {
+        final File file = folder.newFile("docker.yml");
+        FileUtils.write(file, "app:\n  packaging:\n    add:\n    - caf\u00e9\n", StandardCharsets.ISO_8859_1.name());
+
+        Map<Id, Conf> confs = Confs.read(file, new CompiledTokenResolver(new Properties()), new TextFiles(StandardCharsets.ISO_8859_1, Long.MAX_VALUE));
+
+        assertEquals("caf\u00e9", confs.get(new Id("app")).getPackaging().getAdd().get(0).getPath());
+    }
 }
\ No newline at end of file
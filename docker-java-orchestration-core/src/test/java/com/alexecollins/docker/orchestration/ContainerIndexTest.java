@@ -0,0 +1,63 @@
+package com.alexecollins.docker.orchestration;
+
+import com.alexecollins.docker.orchestration.model.Id;
+import com.github.dockerjava.api.model.Container;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ContainerIndexTest {
+
+    private static final Id APP = new Id("app");
+
+    private final Container byImage = container("1", "user/project_app", "/other", "Up 5 minutes");
+    private final Container byName = container("2", "some/image", "/project_app", "Exited (0) 5 minutes ago");
+    private final Container unrelated = container("3", "some/image", "/unrelated", "Up 5 minutes");
+    private final Container byLabel = container("4", "some/image", "/renamed", "Created");
+    private ContainerIndex sut;
+
+    private static Container container(String id, String image, String name, String status) {
+        Container container = mock(Container.class);
+        when(container.getId()).thenReturn(id);
+        when(container.getImage()).thenReturn(image);
+        when(container.getNames()).thenReturn(new String[]{name});
+        when(container.getStatus()).thenReturn(status);
+        return container;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        when(byLabel.getLabels()).thenReturn(Collections.singletonMap(Labels.ID, "app"));
+        sut = new ContainerIndex(Arrays.asList(byName, unrelated, byImage, byLabel));
+    }
+
+    @Test
+    public void findsByLabelImageOrNameInListedOrder() throws Exception {
+        assertEquals(Arrays.asList(byName, byImage, byLabel), sut.find(APP, "user/project_app", "/project_app", true));
+    }
+
+    @Test
+    public void findsOnlyRunning() throws Exception {
+        assertEquals(Collections.singletonList(byImage), sut.find(APP, "user/project_app", "/project_app", false));
+    }
+
+    @Test
+    public void findsNothing() throws Exception {
+        assertTrue(sut.find(APP, "none", "/none", true).isEmpty());
+    }
+
+    @Test
+    public void isRunning() throws Exception {
+        assertTrue(sut.isRunning("1"));
+        assertFalse(sut.isRunning("2"));
+        assertFalse(sut.isRunning("4"));
+    }
+}
@@ -0,0 +1,90 @@
+package com.alexecollins.docker.orchestration;
+
+import com.github.dockerjava.api.model.Container;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ContainerStateCacheTest {
+
+    private final ContainerStateCache sut = new ContainerStateCache();
+
+    private static Container container(String containerId, String id, String status) {
+        Container container = mock(Container.class);
+        when(container.getId()).thenReturn(containerId);
+        when(container.getStatus()).thenReturn(status);
+        when(container.getLabels()).thenReturn(Collections.singletonMap(Labels.ID, id));
+        return container;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        sut.seed(new ContainerIndex(Arrays.asList(container("1", "app", "Up 5 minutes"), container("2", "db", "Exited (0) 5 minutes ago"))));
+    }
+
+    @Test
+    public void seededFromListing() throws Exception {
+        assertEquals(Boolean.TRUE, sut.isRunning("app"));
+        assertEquals(Boolean.FALSE, sut.isRunning("db"));
+        assertNull(sut.isRunning("other"));
+    }
+
+    @Test
+    public void followsEvents() throws Exception {
+        sut.onEvent("1", "die");
+        sut.onEvent("2", "start");
+
+        assertEquals(Boolean.FALSE, sut.isRunning("app"));
+        assertEquals(Boolean.TRUE, sut.isRunning("db"));
+
+        sut.onEvent("2", "destroy");
+        assertEquals(Boolean.FALSE, sut.isRunning("db"));
+    }
+
+    @Test
+    public void ignoresOtherContainers() throws Exception {
+        sut.onEvent("3", "start");
+        sut.onEvent(null, "pull");
+
+        assertNull(sut.isRunning("other"));
+    }
+
+    @Test
+    public void tracksCreatedContainers() throws Exception {
+        assertFalse(sut.isTracked("3"));
+        sut.created("other", "3");
+        assertTrue(sut.isTracked("3"));
+        assertEquals(Boolean.FALSE, sut.isRunning("other"));
+
+        sut.onEvent("3", "start");
+        assertEquals(Boolean.TRUE, sut.isRunning("other"));
+    }
+
+    @Test
+    public void appliesEventsReceivedBeforeSeeding() throws Exception {
+        ContainerStateCache cache = new ContainerStateCache();
+        cache.onEvent("1", "die");
+        cache.onEvent("2", "start");
+
+        cache.seed(new ContainerIndex(Arrays.asList(container("1", "app", "Up 5 minutes"), container("2", "db", "Exited (0) 5 minutes ago"))));
+
+        assertEquals(Boolean.FALSE, cache.isRunning("app"));
+        assertEquals(Boolean.TRUE, cache.isRunning("db"));
+    }
+
+    @Test
+    public void unknownOnceStreamFails() throws Exception {
+        sut.onError(new IllegalStateException());
+
+        assertNull(sut.isRunning("app"));
+    }
+}
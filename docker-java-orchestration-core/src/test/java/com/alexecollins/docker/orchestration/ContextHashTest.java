@@ -0,0 +1,81 @@
+package com.alexecollins.docker.orchestration;
+
+import com.alexecollins.docker.orchestration.model.BuildFlag;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ContextHashTest {
+
+    private final Set<BuildFlag> noFlags = EnumSet.noneOf(BuildFlag.class);
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private File context;
+
+    @Before
+    public void setUp() throws Exception {
+        context = folder.newFolder("context");
+        FileUtils.write(new File(context, "Dockerfile"), "FROM busybox\nADD a/b.txt /\n", StandardCharsets.UTF_8);
+        FileUtils.write(new File(context, "a/b.txt"), "b", StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void sameContextHasSameHash() throws Exception {
+        assertEquals(ContextHash.of(context, noFlags), ContextHash.of(context, noFlags));
+    }
+
+    @Test
+    public void changedFileChangesHash() throws Exception {
+        final String before = ContextHash.of(context, noFlags);
+
+        FileUtils.write(new File(context, "a/b.txt"), "c", StandardCharsets.UTF_8);
+
+        assertNotEquals(before, ContextHash.of(context, noFlags));
+    }
+
+    @Test
+    public void movedFileChangesHash() throws Exception {
+        final String before = ContextHash.of(context, noFlags);
+
+        FileUtils.moveFile(new File(context, "a/b.txt"), new File(context, "a/c.txt"));
+
+        assertNotEquals(before, ContextHash.of(context, noFlags));
+    }
+
+    @Test
+    public void executableFileChangesHash() throws Exception {
+        final String before = ContextHash.of(context, noFlags);
+
+        assertTrue(new File(context, "a/b.txt").setExecutable(true));
+
+        assertNotEquals(before, ContextHash.of(context, noFlags));
+    }
+
+    @Test
+    public void buildFlagsChangeHash() throws Exception {
+        assertNotEquals(ContextHash.of(context, noFlags), ContextHash.of(context, EnumSet.of(BuildFlag.QUIET)));
+    }
+
+    @Test
+    public void fileIsNotAContext() throws Exception {
+        assertNull(ContextHash.of(new File(context, "Dockerfile"), noFlags));
+    }
+
+    @Test
+    public void pathsAreRelativeAndSorted() {
+        assertEquals(Arrays.asList("Dockerfile", "a/b.txt"), ContextHash.paths(context));
+    }
+}
@@ -0,0 +1,39 @@
+package com.alexecollins.docker.orchestration;
+
+import com.alexecollins.docker.orchestration.model.Id;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class ContextMetricsTest {
+
+    private final ContextMetrics metrics = new ContextMetrics(new Id("app"));
+
+    @Test
+    public void largestFilesAreKeptLargestFirst() {
+        for (int i = 1; i <= 7; i++) {
+            metrics.file("f" + i, i * 10);
+        }
+
+        assertEquals(Arrays.asList("f7", "f6", "f5", "f4", "f3"), new ArrayList<>(metrics.getLargestFiles().keySet()));
+        assertEquals(7, metrics.getFileCount());
+        assertEquals(280, metrics.getTotalBytes());
+    }
+
+    @Test
+    public void timesAddUp() {
+        metrics.copied(2);
+        metrics.copied(3);
+        metrics.filtered(100, 4);
+        metrics.filtered(50, 1);
+        metrics.uploaded(7);
+
+        assertEquals(5, metrics.getCopyMillis());
+        assertEquals(5, metrics.getFilterMillis());
+        assertEquals(150, metrics.getFilteredBytes());
+        assertEquals(7, metrics.getUploadMillis());
+    }
+}
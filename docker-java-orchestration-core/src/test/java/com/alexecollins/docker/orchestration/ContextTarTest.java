@@ -0,0 +1,111 @@
+package com.alexecollins.docker.orchestration;
+
+import com.alexecollins.docker.orchestration.model.Conf;
+import com.alexecollins.docker.orchestration.model.Id;
+import com.alexecollins.docker.orchestration.model.Item;
+import com.alexecollins.docker.orchestration.util.CompiledTokenResolver;
+import com.alexecollins.docker.orchestration.util.TextFileFilter;
+import com.alexecollins.docker.orchestration.util.TextFiles;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+
+public class ContextTarTest {
+
+    private final Conf conf = new Conf();
+    private final ContextMetrics metrics = new ContextMetrics(new Id("app"));
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private File src;
+    private ContextTar contextTar;
+
+    @Before
+    public void setUp() throws Exception {
+        src = folder.newFolder("src", "app");
+        final File rootDir = folder.newFolder("root");
+        FileUtils.write(new File(src, "Dockerfile"), "FROM ${base}\n");
+        FileUtils.write(new File(src, "conf/app.properties"), "name=${name}\n");
+        FileUtils.write(new File(rootDir, "app.jar"), "${name}");
+        FileUtils.write(new File(rootDir, "lib/config.txt"), "${name}");
+        conf.getPackaging().getAdd().add(new Item("lib"));
+        final Item jar = new Item("app.jar");
+        jar.setFilter(false);
+        conf.getPackaging().getAdd().add(jar);
+
+        final Properties properties = new Properties();
+        properties.setProperty("base", "busybox");
+        properties.setProperty("name", "app");
+        contextTar = new ContextTar(rootDir, TextFileFilter.INSTANCE, new CompiledTokenResolver(properties), TextFiles.UTF_8);
+    }
+
+    @Test
+    public void tarHasFilteredContextAndPackagedFiles() throws Exception {
+        final Map<String, String> entries = read(contextTar.stream(new Id("app"), src, conf, metrics));
+
+        assertEquals("FROM busybox\n", entries.get("Dockerfile"));
+        assertEquals("", entries.get("conf/"));
+        assertEquals("name=app\n", entries.get("conf/app.properties"));
+        assertEquals("app", entries.get("lib/config.txt"));
+        assertEquals("${name}", entries.get("app.jar"));
+    }
+
+    @Test
+    public void metricsAreRecorded() throws Exception {
+        read(contextTar.stream(new Id("app"), src, conf, metrics));
+
+        assertEquals(4, metrics.getFileCount());
+        assertEquals(32, metrics.getTotalBytes());
+        assertEquals(33, metrics.getFilteredBytes());
+    }
+
+    @Test
+    public void sourceFilesAreNotChanged() throws Exception {
+        read(contextTar.stream(new Id("app"), src, conf, metrics));
+
+        assertEquals("FROM ${base}\n", FileUtils.readFileToString(new File(src, "Dockerfile")));
+        assertEquals("${name}", FileUtils.readFileToString(new File(folder.getRoot(), "root/lib/config.txt")));
+    }
+
+    @Test(expected = IOException.class)
+    public void missingPackagedFileFailsRead() throws Exception {
+        conf.getPackaging().getAdd().add(new Item("missing.jar"));
+
+        read(contextTar.stream(new Id("app"), src, conf, metrics));
+    }
+
+    @Test
+    public void ignoredFilesAreNotInTar() throws Exception {
+        FileUtils.write(new File(src, ".dockerignore"), "conf\nlib/*.txt\n");
+
+        final Map<String, String> entries = read(contextTar.stream(new Id("app"), src, conf, metrics));
+
+        assertEquals(Arrays.asList(".dockerignore", "Dockerfile", "lib/", "app.jar"), new ArrayList<>(entries.keySet()));
+    }
+
+    private static Map<String, String> read(InputStream in) throws IOException {
+        final Map<String, String> entries = new LinkedHashMap<>();
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(in)) {
+            TarArchiveEntry entry;
+            while ((entry = tar.getNextTarEntry()) != null) {
+                entries.put(entry.getName(), IOUtils.toString(tar));
+            }
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,86 @@
+package com.alexecollins.docker.orchestration;
+
+import com.alexecollins.docker.orchestration.model.Id;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class DependencyGraphTest {
+
+    private final Id x = new Id("x"), y = new Id("y"), z = new Id("z");
+    private final Map<Id, List<Id>> links = new LinkedHashMap<>();
+
+    @Test
+    public void keepsDeclarationOrderWhereLinksAllow() throws Exception {
+        links.put(x, Collections.<Id>emptyList());
+        links.put(y, Collections.singletonList(x));
+        links.put(z, Collections.<Id>emptyList());
+
+        final DependencyGraph sut = DependencyGraph.of(links);
+
+        assertEquals(Arrays.asList(x, y, z), sut.ids(false));
+        assertEquals(Arrays.asList(z, y, x), sut.ids(true));
+    }
+
+    @Test
+    public void takesIdsLinkingToLaterOnesInALaterPass() throws Exception {
+        links.put(x, Collections.singletonList(z));
+        links.put(y, Collections.<Id>emptyList());
+        links.put(z, Collections.<Id>emptyList());
+
+        assertEquals(Arrays.asList(y, z, x), DependencyGraph.of(links).ids(false));
+    }
+
+    @Test
+    public void groupsIdsIntoLevels() throws Exception {
+        links.put(x, Collections.<Id>emptyList());
+        links.put(y, Collections.singletonList(x));
+        links.put(z, Collections.<Id>emptyList());
+
+        final DependencyGraph sut = DependencyGraph.of(links);
+
+        assertEquals(Arrays.asList(Arrays.asList(x, z), Collections.singletonList(y)), sut.levels(false));
+        assertEquals(Arrays.asList(Collections.singletonList(y), Arrays.asList(x, z)), sut.levels(true));
+    }
+
+    @Test
+    public void knowsLinksAndDependents() throws Exception {
+        links.put(x, Collections.<Id>emptyList());
+        links.put(y, Collections.singletonList(x));
+        links.put(z, Collections.singletonList(x));
+
+        final DependencyGraph sut = DependencyGraph.of(links);
+
+        assertEquals(Collections.singletonList(x), sut.links(y));
+        assertEquals(Arrays.asList(y, z), sut.dependents(x));
+        assertEquals(Collections.<Id>emptyList(), sut.dependents(y));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void orderIsReadOnly() throws Exception {
+        links.put(x, Collections.<Id>emptyList());
+
+        DependencyGraph.of(links).ids(false).clear();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void circularLinksAreAnError() throws Exception {
+        links.put(x, Collections.singletonList(y));
+        links.put(y, Collections.singletonList(x));
+
+        DependencyGraph.of(links);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void linksToUnknownIdsAreAnError() throws Exception {
+        links.put(x, Collections.singletonList(y));
+
+        DependencyGraph.of(links);
+    }
+}
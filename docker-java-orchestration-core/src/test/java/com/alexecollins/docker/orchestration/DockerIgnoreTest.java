@@ -0,0 +1,51 @@
+package com.alexecollins.docker.orchestration;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DockerIgnoreTest {
+
+    @Test
+    public void matchingPathIsIgnored() {
+        final DockerIgnore ignore = new DockerIgnore(Arrays.asList("node_modules", "*.log", "/test/data"));
+
+        assertTrue(ignore.isIgnored("node_modules"));
+        assertTrue(ignore.isIgnored("debug.log"));
+        assertTrue(ignore.isIgnored("test/data"));
+        assertFalse(ignore.isIgnored("src/debug.log"));
+        assertFalse(ignore.isIgnored("app.jar"));
+    }
+
+    @Test
+    public void trailingSeparatorMatchesTheDirectory() {
+        final DockerIgnore ignore = new DockerIgnore(Arrays.asList("node_modules/", "/test/data//"));
+
+        assertTrue(ignore.isIgnored("node_modules"));
+        assertTrue(ignore.isIgnored("test/data"));
+        assertFalse(ignore.isIgnored("src"));
+    }
+
+    @Test
+    public void lastMatchingPatternWins() {
+        final DockerIgnore ignore = new DockerIgnore(Arrays.asList("*.log", "!keep.log"));
+
+        assertFalse(ignore.isIgnored("keep.log"));
+    }
+
+    @Test
+    public void dockerfileIsNeverIgnored() {
+        final DockerIgnore ignore = new DockerIgnore(Arrays.asList("*"));
+
+        assertFalse(ignore.isIgnored("Dockerfile"));
+        assertFalse(ignore.isIgnored(".dockerignore"));
+    }
+
+    @Test
+    public void noPatternsIgnoresNothing() {
+        assertFalse(DockerIgnore.NONE.isIgnored("debug.log"));
+    }
+}
@@ -18,50 +18,66 @@ import com.github.dockerjava.api.command.CreateContainerCmd;
 import com.github.dockerjava.api.command.CreateContainerResponse;
 import com.github.dockerjava.api.command.InspectContainerCmd;
 import com.github.dockerjava.api.command.InspectContainerResponse;
+import com.github.dockerjava.api.command.InspectImageCmd;
+import com.github.dockerjava.api.command.InspectImageResponse;
 import com.github.dockerjava.api.command.ListContainersCmd;
 import com.github.dockerjava.api.command.ListImagesCmd;
 import com.github.dockerjava.api.command.PushImageCmd;
 import com.github.dockerjava.api.command.RemoveContainerCmd;
+import com.github.dockerjava.api.command.RemoveImageCmd;
 import com.github.dockerjava.api.command.StartContainerCmd;
 import com.github.dockerjava.api.command.StopContainerCmd;
 import com.github.dockerjava.api.command.TagImageCmd;
 import com.github.dockerjava.api.model.AuthConfig;
 import com.github.dockerjava.api.model.Container;
 import com.github.dockerjava.api.model.ContainerConfig;
+import com.github.dockerjava.api.model.Filters;
 import com.github.dockerjava.api.model.Image;
 import com.github.dockerjava.api.model.PushEventStreamItem;
 import com.github.dockerjava.jaxrs.BuildImageCmdExec;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.glassfish.jersey.client.ClientResponse;
 import org.hamcrest.CoreMatchers;
 import org.hamcrest.Description;
 import org.hamcrest.TypeSafeMatcher;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyBoolean;
 import static org.mockito.Mockito.anyInt;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -116,12 +132,12 @@ public class DockerOrchestratorTest {
     @Mock
     private InspectContainerCmd inspectContainerCmdMock;
     @Mock
-    private ListContainersCmd listContainersCmdMockOnlyRunning;
-    @Mock
     private ListContainersCmd listContainersCmdMock;
     @Mock
     private RemoveContainerCmd removeContainerCmdMock;
     @Mock
+    private RemoveImageCmd removeImageCmdMock;
+    @Mock
     private StopContainerCmd stopContainerCmdMock;
     @Mock
     private TagImageCmd tagImageCmdMock;
@@ -133,7 +149,11 @@ public class DockerOrchestratorTest {
     private DockerfileValidator dockerfileValidator;
     @Mock
     private DefinitionFilter definitionFilter;
+    @Mock
+    private ContextMetricsListener contextMetricsListener;
     private DockerOrchestrator testObj;
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
 
     private static TypeSafeMatcher<ILoggingEvent> loggedMessage(final String message) {
         return new TypeSafeMatcher<ILoggingEvent>() {
@@ -171,6 +191,8 @@ public class DockerOrchestratorTest {
         when(repoMock.tag(idMock)).thenReturn(IMAGE_NAME);
         when(repoMock.containerName(idMock)).thenReturn(CONTAINER_NAME);
         when(repoMock.imageName(idMock)).thenReturn(IMAGE_NAME);
+        when(repoMock.defaultContainerName(idMock)).thenReturn("/" + CONTAINER_NAME);
+        when(repoMock.project()).thenReturn("theProject");
 
         when(confMock.getLinks()).thenReturn(new ArrayList<Link>());
         when(confMock.getContainer()).thenReturn(new ContainerConf());
@@ -213,9 +235,9 @@ public class DockerOrchestratorTest {
 
         when(dockerMock.listContainersCmd()).thenReturn(listContainersCmdMock);
         when(listContainersCmdMock.withShowAll(true)).thenReturn(listContainersCmdMock);
-        when(listContainersCmdMock.withShowAll(false)).thenReturn(listContainersCmdMockOnlyRunning);
+        when(listContainersCmdMock.withFilters(any(Filters.class))).thenReturn(listContainersCmdMock);
         when(listContainersCmdMock.exec()).thenReturn(Collections.singletonList(containerMock));
-        when(listContainersCmdMockOnlyRunning.exec()).thenReturn(Collections.singletonList(containerMock));
+        when(containerMock.getStatus()).thenReturn("Up 5 minutes");
         when(containerMock.getImage()).thenReturn(DockerOrchestratorTest.IMAGE_NAME);
 
         when(stopContainerCmdMock.withTimeout(anyInt())).thenReturn(stopContainerCmdMock);
@@ -257,9 +279,31 @@ public class DockerOrchestratorTest {
         verify(startContainerCmdMock).exec();
     }
 
+    @Test
+    public void startInParallelCreatesAndStartsNewContainer() throws DockerException, IOException {
+        when(listContainersCmdMock.exec()).thenReturn(Collections.<Container>emptyList());
+        when(repoMock.levels(false)).thenReturn(Collections.singletonList(Collections.singletonList(idMock)));
+
+        parallelOrchestrator().start();
+
+        verify(createContainerCmdMock).exec();
+        verify(startContainerCmdMock).exec();
+    }
+
+    @Test
+    public void pipelinedBuildAndStartBuildsThenStartsNewContainer() throws DockerException, IOException {
+        when(listContainersCmdMock.exec()).thenReturn(Collections.<Container>emptyList());
+
+        orchestrator(2, 2, true).buildAndStart();
+
+        verify(buildImageCmdMock).exec();
+        verify(createContainerCmdMock).exec();
+        verify(startContainerCmdMock).exec();
+    }
+
     @Test
     public void startExistingContainerAsImageIdsMatch() throws DockerException, IOException {
-        when(listContainersCmdMockOnlyRunning.exec()).thenReturn(Collections.<Container>emptyList());
+        when(containerMock.getStatus()).thenReturn("Exited (0) 5 minutes ago");
         testObj.start();
 
         verify(createContainerCmdMock, times(0)).exec();
@@ -276,6 +320,47 @@ public class DockerOrchestratorTest {
         verify(startContainerCmdMock, times(0)).exec();
     }
 
+    @Test
+    public void containersAreListedOnceWhenNothingChanges() throws DockerException, IOException {
+        testObj.start();
+
+        verify(listContainersCmdMock).exec();
+        verify(listContainersCmdMock).withShowAll(true);
+    }
+
+    @Test
+    public void unlabelledContainersAreListedOnceWhenNothingChanges() {
+        when(repoMock.ids(true)).thenReturn(Arrays.asList(idMock, idMock));
+        when(listContainersCmdMock.exec()).thenReturn(Collections.<Container>emptyList());
+
+        testObj.stop();
+
+        // once labelled, once by name
+        verify(listContainersCmdMock, times(2)).exec();
+        verify(listContainersCmdMock).withFilters(Labels.nameFilter(CONTAINER_NAME));
+    }
+
+    @Test
+    public void newContainerIsLabelled() throws DockerException, IOException {
+        when(listContainersCmdMock.exec()).thenReturn(Collections.<Container>emptyList());
+
+        testObj.start();
+
+        verify(createContainerCmdMock).withLabels(Labels.of("theProject", idMock, confMock));
+        verify(listContainersCmdMock).withFilters(Labels.filter(Labels.PROJECT, "theProject"));
+    }
+
+    @Test
+    public void removeExistingContainerThenCreateAndStartNewOneAsConfHasChanged() throws DockerException, IOException {
+        when(containerMock.getLabels()).thenReturn(Collections.singletonMap(Labels.CONF_HASH, "oldHash"));
+
+        testObj.start();
+
+        verify(removeContainerCmdMock).exec();
+        verify(createContainerCmdMock).exec();
+        verify(startContainerCmdMock).exec();
+    }
+
     @Test
     public void removeExistingContainerThenCreateAndStartNewOneAsImageIdsDoNotMatch() throws DockerException, IOException {
         when(containerInspectResponseMock.getImageId()).thenReturn("A Different Image Id");
@@ -297,6 +382,71 @@ public class DockerOrchestratorTest {
         verify(stopContainerCmdMock).exec();
     }
 
+    @Test
+    public void stopARunningContainerInParallel() {
+        when(repoMock.levels(true)).thenReturn(Collections.singletonList(Collections.singletonList(idMock)));
+
+        parallelOrchestrator().stop();
+
+        verify(stopContainerCmdMock).exec();
+    }
+
+    @Test
+    public void cleanInParallelRemovesContainerThenImage() {
+        when(repoMock.levels(true)).thenReturn(Collections.singletonList(Collections.singletonList(idMock)));
+        when(dockerMock.removeImageCmd(IMAGE_ID)).thenReturn(removeImageCmdMock);
+        when(removeImageCmdMock.withForce()).thenReturn(removeImageCmdMock);
+
+        parallelOrchestrator().clean();
+
+        InOrder inOrder = inOrder(removeContainerCmdMock, removeImageCmdMock);
+        inOrder.verify(removeContainerCmdMock).exec();
+        inOrder.verify(removeImageCmdMock).exec();
+    }
+
+    @Test
+    public void isRunningFollowsContainerEventsWithoutListingAgain() {
+        when(containerMock.getLabels()).thenReturn(Collections.singletonMap(Labels.ID, idMock.toString()));
+        FakeContainerEventSource events = new FakeContainerEventSource();
+        DockerOrchestrator orchestrator = orchestrator(1, 1, false, events);
+
+        assertTrue(orchestrator.isRunning());
+
+        events.listener.onEvent(CONTAINER_ID, "die");
+        assertFalse(orchestrator.isRunning());
+
+        verify(listContainersCmdMock).exec();
+
+        orchestrator.close();
+        assertTrue(events.closed);
+    }
+
+    @Test
+    public void isRunningKeepsTheSnapshotUntilAnotherOfTheProjectsContainersIsCreated() {
+        FakeContainerEventSource events = new FakeContainerEventSource();
+        DockerOrchestrator orchestrator = orchestrator(1, 1, false, events);
+        InspectContainerCmd inspectOtherCmd = mock(InspectContainerCmd.class);
+        InspectContainerResponse other = mock(InspectContainerResponse.class);
+        when(dockerMock.inspectContainerCmd("otherContainer")).thenReturn(inspectOtherCmd);
+        when(inspectOtherCmd.exec()).thenReturn(other);
+        when(other.getConfig()).thenReturn(containerConfigMock);
+        when(containerConfigMock.getLabels()).thenReturn(Collections.singletonMap(Labels.PROJECT, "otherProject"));
+
+        assertTrue(orchestrator.isRunning());
+        assertTrue(orchestrator.isRunning());
+        verify(listContainersCmdMock).exec();
+
+        events.listener.onEvent("otherContainer", "start");
+        events.listener.onEvent("otherContainer", "create");
+        assertTrue(orchestrator.isRunning());
+        verify(listContainersCmdMock).exec();
+
+        when(containerConfigMock.getLabels()).thenReturn(Collections.singletonMap(Labels.PROJECT, "theProject"));
+        events.listener.onEvent("otherContainer", "create");
+        assertTrue(orchestrator.isRunning());
+        verify(listContainersCmdMock, times(2)).exec();
+    }
+
     @Test
     public void logsLoadedPlugin() throws Exception {
         verify(appender, atLeastOnce()).doAppend(captor.capture());
@@ -333,6 +483,162 @@ public class DockerOrchestratorTest {
         verify(dockerMock).tagImageCmd(IMAGE_ID, IMAGE_NAME, TAG_NAME);
     }
 
+    @Test
+    public void buildInParallelLogsEachImageAsOneBlock() {
+        parallelOrchestrator().build();
+
+        verify(dockerMock).tagImageCmd(IMAGE_ID, IMAGE_NAME, TAG_NAME);
+        verify(appender, atLeastOnce()).doAppend(captor.capture());
+        assertThat(captor.getAllValues(), CoreMatchers.hasItem(loggedMessage("Log for idMock:")));
+    }
+
+    @Test
+    public void buildImageTagsImageIdFromBuildOutput() {
+        when(buildImageCmdMock.exec()).thenReturn(new BuildImageCmdExec.ResponseImpl(IOUtils.toInputStream("{\"stream\":\"Successfully built 0123456789ab\\n\"}")));
+
+        testObj.build(idMock);
+
+        verify(dockerMock).tagImageCmd("0123456789ab", IMAGE_NAME, TAG_NAME);
+        verify(dockerMock, never()).listImagesCmd();
+    }
+
+    @Test
+    public void buildIsSkippedWhenContextHasNotChanged() throws Exception {
+        final File context = context();
+        labelImage(Labels.CONTEXT_HASH, ContextHash.of(context, EnumSet.noneOf(BuildFlag.class)));
+
+        testObj.build(idMock);
+
+        verify(dockerMock, never()).buildImageCmd(any(File.class));
+    }
+
+    @Test
+    public void buildIsNotSkippedWhenContextHasChanged() throws Exception {
+        final File context = context();
+        labelImage(Labels.CONTEXT_HASH, "other");
+        when(dockerMock.buildImageCmd(eq(context))).thenReturn(buildImageCmdMock);
+
+        testObj.build(idMock);
+
+        verify(dockerMock).buildImageCmd(context);
+        assertThat(FileUtils.readFileToString(new File(context, "Dockerfile"), StandardCharsets.UTF_8), CoreMatchers.containsString("LABEL " + Labels.CONTEXT_HASH + "="));
+    }
+
+    @Test
+    public void buildReportsContextMetrics() throws Exception {
+        final ContextMetrics metrics = new ContextMetrics(idMock);
+        when(fileOrchestratorMock.metrics(idMock)).thenReturn(metrics);
+        testObj = orchestrator(1, 1, false);
+
+        testObj.build(idMock);
+
+        verify(contextMetricsListener).onContext(metrics);
+    }
+
+    @Test
+    public void startUsesRunningContainerFromJournal() throws Exception {
+        final Journal journal = new Journal(new File(folder.getRoot(), Journal.FILE_NAME));
+        journal.created(idMock, CONTAINER_ID, IMAGE_ID, Labels.hash(confMock));
+        final InspectContainerResponse.ContainerState state = mock(InspectContainerResponse.ContainerState.class);
+        when(state.isRunning()).thenReturn(true);
+        when(containerInspectResponseMock.getState()).thenReturn(state);
+        when(containerInspectResponseMock.getConfig()).thenReturn(containerConfigMock);
+        when(containerConfigMock.getLabels()).thenReturn(Collections.singletonMap(Labels.ID, idMock.toString()));
+        when(definitionFilter.test(any(Id.class), any(Conf.class))).thenReturn(true);
+        tagImage(IMAGE_ID);
+        testObj = orchestrator(1, 1, false, null, journal);
+
+        testObj.start();
+
+        verify(dockerMock, never()).listContainersCmd();
+        verify(dockerMock, never()).listImagesCmd();
+        verify(dockerMock, never()).startContainerCmd(CONTAINER_ID);
+    }
+
+    @Test
+    public void startDiscoversContainerWhenTagHasMovedSinceJournal() throws Exception {
+        final Journal journal = new Journal(new File(folder.getRoot(), Journal.FILE_NAME));
+        journal.created(idMock, CONTAINER_ID, IMAGE_ID, Labels.hash(confMock));
+        final InspectContainerResponse.ContainerState state = mock(InspectContainerResponse.ContainerState.class);
+        when(state.isRunning()).thenReturn(true);
+        when(containerInspectResponseMock.getState()).thenReturn(state);
+        when(containerInspectResponseMock.getConfig()).thenReturn(containerConfigMock);
+        when(containerConfigMock.getLabels()).thenReturn(Collections.singletonMap(Labels.ID, idMock.toString()));
+        when(definitionFilter.test(any(Id.class), any(Conf.class))).thenReturn(true);
+        tagImage("rebuiltImageId");
+        testObj = orchestrator(1, 1, false, null, journal);
+
+        testObj.start();
+
+        verify(dockerMock, atLeastOnce()).listContainersCmd();
+    }
+
+    private void tagImage(String imageId) {
+        final InspectImageCmd inspectImageCmd = mock(InspectImageCmd.class);
+        final InspectImageResponse inspectImageResponse = mock(InspectImageResponse.class);
+        when(dockerMock.inspectImageCmd(IMAGE_NAME + ":" + TAG_NAME)).thenReturn(inspectImageCmd);
+        when(inspectImageCmd.exec()).thenReturn(inspectImageResponse);
+        when(inspectImageResponse.getId()).thenReturn(imageId);
+    }
+
+    @Test
+    public void buildIsSkippedWithOneInspectFromJournal() throws Exception {
+        final File context = context();
+        final String contextHash = ContextHash.of(context, EnumSet.noneOf(BuildFlag.class));
+        final Journal journal = new Journal(new File(folder.getRoot(), Journal.FILE_NAME));
+        journal.built(idMock, contextHash, IMAGE_ID);
+        final InspectImageCmd inspectImageCmd = mock(InspectImageCmd.class);
+        final InspectImageResponse inspectImageResponse = mock(InspectImageResponse.class);
+        when(dockerMock.inspectImageCmd(IMAGE_NAME + ":" + TAG_NAME)).thenReturn(inspectImageCmd);
+        when(inspectImageCmd.exec()).thenReturn(inspectImageResponse);
+        when(inspectImageResponse.getId()).thenReturn(IMAGE_ID);
+        when(inspectImageResponse.getConfig()).thenReturn(containerConfigMock);
+        when(containerConfigMock.getLabels()).thenReturn(Collections.singletonMap(Labels.CONTEXT_HASH, contextHash));
+
+        orchestrator(1, 1, false, null, journal).build(idMock);
+
+        verify(dockerMock, never()).buildImageCmd(any(File.class));
+        verify(dockerMock, never()).listImagesCmd();
+    }
+
+    @Test
+    public void buildStreamsContext() throws Exception {
+        final InputStream context = new ByteArrayInputStream(new byte[0]);
+        when(fileOrchestratorMock.isStreaming()).thenReturn(true);
+        when(fileOrchestratorMock.stream(idMock, srcFileMock, confMock)).thenReturn(context);
+        when(dockerMock.buildImageCmd(context)).thenReturn(buildImageCmdMock);
+
+        testObj.build(idMock);
+
+        verify(dockerMock).buildImageCmd(context);
+        verify(fileOrchestratorMock, never()).prepare(idMock, srcFileMock, confMock);
+    }
+
+    private File context() throws IOException {
+        final File context = folder.newFolder("context");
+        FileUtils.write(new File(context, "Dockerfile"), "FROM busybox\n", StandardCharsets.UTF_8);
+        when(fileOrchestratorMock.prepare(idMock, srcFileMock, confMock)).thenReturn(context);
+        return context;
+    }
+
+    private void labelImage(String label, String value) {
+        final InspectImageCmd inspectImageCmd = mock(InspectImageCmd.class);
+        final InspectImageResponse inspectImageResponse = mock(InspectImageResponse.class);
+        final ContainerConfig config = mock(ContainerConfig.class);
+        when(dockerMock.inspectImageCmd(IMAGE_ID)).thenReturn(inspectImageCmd);
+        when(inspectImageCmd.exec()).thenReturn(inspectImageResponse);
+        when(inspectImageResponse.getConfig()).thenReturn(config);
+        when(config.getLabels()).thenReturn(Collections.singletonMap(label, value));
+    }
+
+    @Test
+    public void imageIdsMatchWhetherShortOrFull() {
+        assertTrue(DockerOrchestrator.isSameImageId("0123456789ab", "0123456789abcdef"));
+        assertTrue(DockerOrchestrator.isSameImageId("sha256:0123456789abcdef", "0123456789ab"));
+        assertFalse(DockerOrchestrator.isSameImageId("0123456789ab", "ba9876543210"));
+        assertFalse(DockerOrchestrator.isSameImageId("0123456789ab", null));
+    }
+
     @Test
     public void buildImageWithRegistryAndPort() {
         String repositoryWithRegistryAndPort = "my.registry.com:5000/mynamespace/myrepository";
@@ -387,6 +693,16 @@ public class DockerOrchestratorTest {
 
     }
 
+    @Test
+    public void filteredDefinitionsAreNotStartedInParallel() throws Exception {
+        when(definitionFilter.test(any(Id.class), any(Conf.class))).thenReturn(false);
+        when(repoMock.levels(false)).thenReturn(Collections.singletonList(Collections.singletonList(idMock)));
+
+        parallelOrchestrator().start();
+
+        verifyNoMoreInteractions(dockerMock);
+    }
+
     @Test
     public void disabledContainerResultsInNoInteraction() throws Exception {
         when(confMock.isEnabled()).thenReturn(false);
@@ -401,4 +717,51 @@ public class DockerOrchestratorTest {
         verifyNoMoreInteractions(dockerMock);
 
     }
+
+    private DockerOrchestrator parallelOrchestrator() {
+        return orchestrator(2, 2, false);
+    }
+
+    private DockerOrchestrator orchestrator(int concurrency, int buildConcurrency, boolean pipelined) {
+        return orchestrator(concurrency, buildConcurrency, pipelined, null);
+    }
+
+    private DockerOrchestrator orchestrator(int concurrency, int buildConcurrency, boolean pipelined, ContainerEventSource eventSource) {
+        return orchestrator(concurrency, buildConcurrency, pipelined, eventSource, null);
+    }
+
+    private DockerOrchestrator orchestrator(int concurrency, int buildConcurrency, boolean pipelined, ContainerEventSource eventSource, Journal journal) {
+        return new DockerOrchestrator(
+                dockerMock,
+                repoMock,
+                fileOrchestratorMock,
+                EnumSet.noneOf(BuildFlag.class),
+                LOGGER,
+                dockerfileValidator,
+                definitionFilter,
+                false,
+                concurrency,
+                buildConcurrency,
+                pipelined,
+                eventSource,
+                ProgressListener.NONE,
+                contextMetricsListener,
+                journal);
+    }
+
+    private static class FakeContainerEventSource implements ContainerEventSource {
+        private Listener listener;
+        private boolean closed;
+
+        @Override
+        public Closeable subscribe(Listener listener) {
+            this.listener = listener;
+            return new Closeable() {
+                @Override
+                public void close() {
+                    closed = true;
+                }
+            };
+        }
+    }
 }
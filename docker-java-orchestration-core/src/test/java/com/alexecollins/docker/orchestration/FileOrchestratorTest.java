@@ -0,0 +1,196 @@
+package com.alexecollins.docker.orchestration;
+
+import com.alexecollins.docker.orchestration.model.Conf;
+import com.alexecollins.docker.orchestration.model.Id;
+import com.alexecollins.docker.orchestration.model.Item;
+import com.alexecollins.docker.orchestration.util.TextFileFilter;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FileOrchestratorTest {
+
+    private final Id id = new Id("app");
+    private final Conf conf = new Conf();
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private File src;
+    private File rootDir;
+    private FileOrchestrator incremental;
+
+    @Before
+    public void setUp() throws Exception {
+        src = folder.newFolder("src", "app");
+        rootDir = folder.newFolder("root");
+        FileUtils.write(new File(src, "Dockerfile"), "FROM ${base}\n");
+        FileUtils.write(new File(src, "data.bin"), "data");
+        FileUtils.write(new File(rootDir, "app.jar"), "jar");
+        final Item item = new Item("app.jar");
+        item.setFilter(false);
+        conf.getPackaging().getAdd().add(item);
+
+        final Properties properties = new Properties();
+        properties.setProperty("base", "busybox");
+        incremental = new FileOrchestrator(folder.newFolder("work"), rootDir, TextFileFilter.INSTANCE, properties, true);
+    }
+
+    @Test
+    public void prepareCopiesAndFilters() throws Exception {
+        final File dest = incremental.prepare(id, src, conf);
+
+        assertEquals("FROM busybox\n", FileUtils.readFileToString(new File(dest, "Dockerfile")));
+        assertEquals("data", FileUtils.readFileToString(new File(dest, "data.bin")));
+        assertEquals("jar", FileUtils.readFileToString(new File(dest, "app.jar")));
+    }
+
+    @Test
+    public void prepareRecordsMetrics() throws Exception {
+        final Properties properties = new Properties();
+        properties.setProperty("base", "busybox");
+        final FileOrchestrator full = new FileOrchestrator(folder.newFolder("full"), rootDir, TextFileFilter.INSTANCE, properties);
+
+        for (FileOrchestrator fileOrchestrator : new FileOrchestrator[]{full, incremental}) {
+            fileOrchestrator.prepare(id, src, conf);
+
+            final ContextMetrics metrics = fileOrchestrator.metrics(id);
+            assertEquals(3, metrics.getFileCount());
+            assertEquals("Dockerfile", metrics.getLargestFiles().keySet().iterator().next());
+            assertEquals(13, metrics.getFilteredBytes());
+        }
+    }
+
+    @Test
+    public void filesWithoutTokensAreCountedAsSkipped() throws Exception {
+        final FileOrchestrator full = new FileOrchestrator(folder.newFolder("full"), rootDir, TextFileFilter.INSTANCE, new Properties());
+
+        full.prepare(id, src, conf);
+
+        final ContextMetrics metrics = full.metrics(id);
+        assertEquals(0, metrics.getFilteredBytes());
+        assertEquals(1, metrics.getFilterSkippedFiles());
+    }
+
+    @Test
+    public void unchangedFilesAreNotCopiedAgain() throws Exception {
+        final File dest = incremental.prepare(id, src, conf);
+        // same size and modified time, so only different if copied again
+        final File data = new File(dest, "data.bin");
+        final long lastModified = data.lastModified();
+        FileUtils.write(data, "DATA");
+        assertTrue(data.setLastModified(lastModified));
+        final File dockerfile = new File(dest, "Dockerfile");
+        assertTrue(dockerfile.setLastModified(10000));
+
+        incremental.prepare(id, src, conf);
+
+        assertEquals("DATA", FileUtils.readFileToString(data));
+        assertEquals(10000, dockerfile.lastModified());
+    }
+
+    @Test
+    public void changedFilesAreCopied() throws Exception {
+        final File dest = incremental.prepare(id, src, conf);
+        FileUtils.write(new File(src, "data.bin"), "changed");
+
+        incremental.prepare(id, src, conf);
+
+        assertEquals("changed", FileUtils.readFileToString(new File(dest, "data.bin")));
+    }
+
+    @Test
+    public void staleFilesAreDeleted() throws Exception {
+        final File dest = incremental.prepare(id, src, conf);
+        FileUtils.forceDelete(new File(src, "data.bin"));
+        FileUtils.write(new File(dest, "other/stale.txt"), "stale");
+
+        incremental.prepare(id, src, conf);
+
+        assertFalse(new File(dest, "data.bin").exists());
+        assertFalse(new File(dest, "other").exists());
+    }
+
+    @Test
+    public void unfilteredPackagedFilesAreLinked() throws Exception {
+        final File dest = linking(false).prepare(id, src, conf);
+
+        assertTrue(Files.isSameFile(new File(rootDir, "app.jar").toPath(), new File(dest, "app.jar").toPath()));
+        assertFalse(Files.isSameFile(new File(src, "data.bin").toPath(), new File(dest, "data.bin").toPath()));
+    }
+
+    @Test
+    public void unfilteredPackagedFilesAreLinkedIncrementally() throws Exception {
+        final File dest = linking(true).prepare(id, src, conf);
+
+        assertTrue(Files.isSameFile(new File(rootDir, "app.jar").toPath(), new File(dest, "app.jar").toPath()));
+    }
+
+    @Test
+    public void packagedFilesLinkedBeforeAreReplacedRatherThanWrittenThrough() throws Exception {
+        FileUtils.write(new File(rootDir, "app.properties"), "base=${base}\n");
+        final Item item = new Item("app.properties");
+        conf.getPackaging().getAdd().add(item);
+        final Properties properties = new Properties();
+        properties.setProperty("base", "busybox");
+
+        for (boolean incremental : new boolean[]{false, true}) {
+            final File workDir = folder.newFolder("relinked-" + incremental);
+            item.setFilter(false);
+            new FileOrchestrator(workDir, rootDir, TextFileFilter.INSTANCE, properties, incremental, true, false).prepare(id, src, conf);
+            item.setFilter(true);
+
+            final File dest = new FileOrchestrator(workDir, rootDir, TextFileFilter.INSTANCE, properties, incremental, false, false).prepare(id, src, conf);
+
+            assertEquals("jar", FileUtils.readFileToString(new File(dest, "app.jar")));
+            assertEquals("base=busybox\n", FileUtils.readFileToString(new File(dest, "app.properties")));
+            assertEquals("jar", FileUtils.readFileToString(new File(rootDir, "app.jar")));
+            assertEquals("base=${base}\n", FileUtils.readFileToString(new File(rootDir, "app.properties")));
+        }
+    }
+
+    private FileOrchestrator linking(boolean incremental) throws Exception {
+        return new FileOrchestrator(folder.newFolder("linked"), rootDir, TextFileFilter.INSTANCE, new Properties(), incremental, true, false);
+    }
+
+    @Test
+    public void ignoredFilesAreNotCopied() throws Exception {
+        FileUtils.write(new File(src, ".dockerignore"), "node_modules\n*.jar\n");
+        FileUtils.write(new File(src, "node_modules/a/index.js"), "a");
+        final FileOrchestrator full = new FileOrchestrator(folder.newFolder("full"), rootDir, TextFileFilter.INSTANCE, new Properties());
+
+        for (FileOrchestrator fileOrchestrator : new FileOrchestrator[]{full, incremental}) {
+            final File dest = fileOrchestrator.prepare(id, src, conf);
+
+            assertTrue(new File(dest, "data.bin").exists());
+            assertFalse(new File(dest, "node_modules").exists());
+            assertFalse(new File(dest, "app.jar").exists());
+        }
+    }
+
+    @Test
+    public void filteredPackagedFilesAreFilteredIntoTheContextOnly() throws Exception {
+        FileUtils.write(new File(rootDir, "conf/app.properties"), "base=${base}\n");
+        FileUtils.write(new File(rootDir, "conf/lib.jar"), "${base}");
+        conf.getPackaging().getAdd().add(new Item("conf"));
+        final Properties properties = new Properties();
+        properties.setProperty("base", "busybox");
+        final FileOrchestrator full = new FileOrchestrator(folder.newFolder("full"), rootDir, TextFileFilter.INSTANCE, properties);
+
+        for (FileOrchestrator fileOrchestrator : new FileOrchestrator[]{full, incremental}) {
+            final File dest = fileOrchestrator.prepare(id, src, conf);
+
+            assertEquals("base=busybox\n", FileUtils.readFileToString(new File(dest, "conf/app.properties")));
+            assertEquals("${base}", FileUtils.readFileToString(new File(dest, "conf/lib.jar")));
+            assertEquals("base=${base}\n", FileUtils.readFileToString(new File(rootDir, "conf/app.properties")));
+        }
+    }
+}
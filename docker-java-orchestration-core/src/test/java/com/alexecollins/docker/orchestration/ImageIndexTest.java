@@ -0,0 +1,54 @@
+package com.alexecollins.docker.orchestration;
+
+import com.github.dockerjava.api.model.Image;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ImageIndexTest {
+
+    private final ImageIndex sut = new ImageIndex(Arrays.asList(
+            image("1", "user/app:1.0", "user/app:latest"),
+            image("2", "user/app-test:latest"),
+            image("3", "registry:5000/user/db:latest")));
+
+    private static Image image(String id, String... tags) {
+        Image image = mock(Image.class);
+        when(image.getId()).thenReturn(id);
+        when(image.getRepoTags()).thenReturn(tags);
+        return image;
+    }
+
+    @Test
+    public void findsExactTag() throws Exception {
+        assertEquals("1", sut.find("user/app:1.0"));
+        assertEquals("2", sut.find("user/app-test:latest"));
+    }
+
+    @Test
+    public void noTagNameMeansLatest() throws Exception {
+        assertEquals("1", sut.find("user/app"));
+        assertEquals("3", sut.find("registry:5000/user/db"));
+    }
+
+    @Test
+    public void doesNotMatchPrefixUnlessAsked() throws Exception {
+        assertNull(sut.find("user/app-"));
+        assertEquals("2", sut.findByPrefix("user/app-"));
+    }
+
+    @Test
+    public void putAndRemove() throws Exception {
+        sut.put("user/other", "4");
+        assertEquals("4", sut.find("user/other:latest"));
+
+        sut.remove("1");
+        assertNull(sut.find("user/app:1.0"));
+        assertNull(sut.find("user/app"));
+    }
+}
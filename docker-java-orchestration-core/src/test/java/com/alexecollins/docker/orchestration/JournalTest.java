@@ -0,0 +1,49 @@
+package com.alexecollins.docker.orchestration;
+
+import com.alexecollins.docker.orchestration.model.Id;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class JournalTest {
+
+    private final Id id = new Id("app");
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void journalIsKeptBetweenRuns() throws Exception {
+        final File file = new File(folder.getRoot(), Journal.FILE_NAME);
+        new Journal(file).built(id, "contextHash", "imageId");
+        new Journal(file).created(id, "containerId", "imageId2", "confHash");
+
+        final Journal journal = new Journal(file);
+
+        assertEquals("contextHash", journal.contextHash(id));
+        assertEquals("imageId2", journal.imageId(id));
+        assertEquals("containerId", journal.containerId(id));
+        assertEquals("confHash", journal.confHash(id));
+    }
+
+    @Test
+    public void removedServiceIsForgotten() throws Exception {
+        final File file = new File(folder.getRoot(), Journal.FILE_NAME);
+        new Journal(file).created(id, "containerId", "imageId", "confHash");
+        new Journal(file).removed(id);
+
+        final Journal journal = new Journal(file);
+
+        assertNull(journal.containerId(id));
+        assertNull(journal.imageId(id));
+    }
+
+    @Test
+    public void missingJournalIsEmpty() {
+        assertNull(new Journal(new File(folder.getRoot(), "missing")).imageId(id));
+    }
+}
@@ -0,0 +1,42 @@
+package com.alexecollins.docker.orchestration;
+
+import com.alexecollins.docker.orchestration.model.Conf;
+import com.alexecollins.docker.orchestration.model.Id;
+import com.github.dockerjava.api.model.Filters;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class LabelsTest {
+
+    @Test
+    public void labelsContainerWithProjectIdAndConfHash() throws Exception {
+        Conf conf = new Conf();
+        Map<String, String> labels = Labels.of("project", new Id("app"), conf);
+
+        assertEquals("project", labels.get(Labels.PROJECT));
+        assertEquals("app", labels.get(Labels.ID));
+        assertEquals(Labels.hash(conf), labels.get(Labels.CONF_HASH));
+    }
+
+    @Test
+    public void confHashChangesWithConf() throws Exception {
+        Conf conf = new Conf();
+        String before = Labels.hash(conf);
+        assertEquals(before, Labels.hash(new Conf()));
+
+        conf.setSleep(1000);
+        assertNotEquals(before, Labels.hash(conf));
+    }
+
+    @Test
+    public void filtersMatchLabelOrNames() throws Exception {
+        assertEquals(new Filters().withFilter("label", "a=b"), Labels.filter("a", "b"));
+        assertEquals(new Filters().withFilter("name", "project_app"), Labels.nameFilter("project_app"));
+        assertEquals(new Filters().withFilter("name", "project_app", "project_db"), Labels.nameFilter(Arrays.asList("project_app", "project_db")));
+    }
+}
@@ -0,0 +1,79 @@
+package com.alexecollins.docker.orchestration;
+
+import com.alexecollins.docker.orchestration.model.Id;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ParallelRunnerTest {
+
+    private final Id a = new Id("a"), b = new Id("b");
+
+    @Test
+    public void runsTasksAtTheSameTime() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(2);
+
+        new ParallelRunner(2).run("test", Arrays.asList(a, b), new ParallelRunner.Task() {
+            @Override
+            public void run(Id id) {
+                latch.countDown();
+                try {
+                    if (!latch.await(5, TimeUnit.SECONDS)) {
+                        throw new IllegalStateException("tasks not run at the same time");
+                    }
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void singleFailureIsRethrown() throws Exception {
+        new ParallelRunner(2).run("test", Collections.singletonList(a), new ParallelRunner.Task() {
+            @Override
+            public void run(Id id) {
+                throw new IllegalStateException();
+            }
+        });
+    }
+
+    @Test
+    public void allFailuresAreReported() throws Exception {
+        try {
+            new ParallelRunner(2).run("test", Arrays.asList(a, b), new ParallelRunner.Task() {
+                @Override
+                public void run(Id id) {
+                    throw new IllegalStateException(id + " failed");
+                }
+            });
+            fail();
+        } catch (OrchestrationException e) {
+            assertTrue(e.getMessage().contains("a failed"));
+            assertTrue(e.getMessage().contains("b failed"));
+            assertEquals(2, e.getSuppressed().length);
+        }
+    }
+
+    @Test
+    public void emptyIdsDoesNothing() throws Exception {
+        new ParallelRunner(1).run("test", Collections.<Id>emptyList(), new ParallelRunner.Task() {
+            @Override
+            public void run(Id id) {
+                fail();
+            }
+        });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void concurrencyMustBePositive() throws Exception {
+        new ParallelRunner(0);
+    }
+}
@@ -0,0 +1,95 @@
+package com.alexecollins.docker.orchestration;
+
+import com.alexecollins.docker.orchestration.model.Id;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PipelineSchedulerTest {
+
+    private final Id db = new Id("db"), app = new Id("app"), other = new Id("other");
+    private final PipelineScheduler sut = new PipelineScheduler(2, 2, LoggerFactory.getLogger(PipelineSchedulerTest.class));
+    private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+    private final Map<Id, List<Id>> links = new HashMap<>();
+
+    public PipelineSchedulerTest() {
+        links.put(db, Collections.<Id>emptyList());
+        links.put(app, Collections.singletonList(db));
+        links.put(other, Collections.<Id>emptyList());
+    }
+
+    @Test
+    public void startsAfterOwnBuildAndLinkedStarts() throws Exception {
+        sut.run(Arrays.asList(db, app, other), links, record("build"), record("start"));
+
+        assertTrue(events.indexOf("build app") < events.indexOf("start app"));
+        assertTrue(events.indexOf("start db") < events.indexOf("start app"));
+        assertEquals(6, events.size());
+    }
+
+    @Test
+    public void buildFailureSkipsDependentsAndIsReportedOnce() throws Exception {
+        try {
+            sut.run(Arrays.asList(db, app, other), links, new ParallelRunner.Task() {
+                @Override
+                public void run(Id id) {
+                    if (id.equals(db)) {
+                        throw new IllegalStateException("db build failed");
+                    }
+                }
+            }, record("start"));
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("db build failed", e.getMessage());
+        }
+        assertEquals(Collections.singletonList("start other"), events);
+    }
+
+    @Test
+    public void serviceWaitingForItsBuildDoesNotHoldUpOneThatIsReady() throws Exception {
+        final CountDownLatch otherStarted = new CountDownLatch(1);
+        new PipelineScheduler(2, 1, LoggerFactory.getLogger(PipelineSchedulerTest.class)).run(Arrays.asList(db, other), links, new ParallelRunner.Task() {
+            @Override
+            public void run(Id id) {
+                try {
+                    if (id.equals(db) && !otherStarted.await(10, TimeUnit.SECONDS)) {
+                        throw new IllegalStateException("other did not start while db was building");
+                    }
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }, new ParallelRunner.Task() {
+            @Override
+            public void run(Id id) {
+                events.add("start " + id);
+                if (id.equals(other)) {
+                    otherStarted.countDown();
+                }
+            }
+        });
+
+        assertEquals(Arrays.asList("start other", "start db"), events);
+    }
+
+    private ParallelRunner.Task record(final String stage) {
+        return new ParallelRunner.Task() {
+            @Override
+            public void run(Id id) {
+                events.add(stage + " " + id);
+            }
+        };
+    }
+}
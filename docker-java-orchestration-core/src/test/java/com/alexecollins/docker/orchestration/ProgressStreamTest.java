@@ -0,0 +1,124 @@
+package com.alexecollins.docker.orchestration;
+
+import com.alexecollins.docker.orchestration.model.Id;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class ProgressStreamTest {
+
+    private final Id id = new Id("a");
+    private final List<ProgressEvent> events = new ArrayList<>();
+    private final ProgressStream stream = new ProgressStream(id, ServiceLog.direct(LoggerFactory.getLogger(ProgressStreamTest.class)), new ProgressListener() {
+        @Override
+        public void onEvent(Id id, ProgressEvent event) {
+            events.add(event);
+        }
+    });
+
+    @Test
+    public void streamTextIsAnEvent() throws Exception {
+        assertNull(read("{\"stream\":\"Step 1 : FROM busybox\\n\"}"));
+
+        assertEquals(1, events.size());
+        assertEquals(ProgressEvent.Type.STREAM, events.get(0).getType());
+        assertEquals("Step 1 : FROM busybox\n", events.get(0).getText());
+    }
+
+    @Test
+    public void imageIdIsTakenFromBuildOutput() throws Exception {
+        assertEquals("0123456789ab", read("{\"stream\":\"Successfully built 0123456789ab\\n\"}"));
+    }
+
+    @Test
+    public void imageIdIsOnlyTakenFromAWholeMessage() throws Exception {
+        assertNull(read("{\"stream\":\"echo Successfully built 0123456789ab\\n\"}"));
+        assertNull(read("{\"stream\":\"Successfully built 0123456789ab, said the step\\n\"}"));
+        assertNull(read("{\"status\":\"Successfully built 0123456789ab\"}"));
+        assertNull(read(" ---> Running in 0123\nSuccessfully built 0123456789ab, said the step\n"));
+    }
+
+    @Test
+    public void imageIdIsTakenFromAux() throws Exception {
+        assertEquals("sha256:0123", read("{\"aux\":{\"ID\":\"sha256:0123\"}}"));
+
+        assertEquals(ProgressEvent.Type.AUX, events.get(0).getType());
+    }
+
+    @Test
+    public void progressHasCurrentAndTotal() throws Exception {
+        read("{\"status\":\"Pushing\",\"progressDetail\":{\"current\":512,\"total\":1024},\"progress\":\"[=>  ]\",\"id\":\"abc\"}");
+
+        final ProgressEvent event = events.get(0);
+        assertEquals(ProgressEvent.Type.PROGRESS, event.getType());
+        assertEquals("abc", event.getLayer());
+        assertEquals("Pushing", event.getText());
+        assertEquals(512, event.getCurrent());
+        assertEquals(1024, event.getTotal());
+    }
+
+    @Test
+    public void statusWithEmptyProgressIsStatus() throws Exception {
+        read("{\"status\":\"Pulling fs layer\",\"progressDetail\":{},\"id\":\"abc\"}");
+
+        assertEquals(ProgressEvent.Type.STATUS, events.get(0).getType());
+    }
+
+    @Test
+    public void plainTextIsStreamText() throws Exception {
+        assertEquals("0123", read("Successfully built 0123"));
+    }
+
+    @Test(expected = OrchestrationException.class)
+    public void errorThrowsException() throws Exception {
+        read("{\"errorDetail\":{\"message\":\"failed\"},\"error\":\"failed\"}");
+    }
+
+    @Test
+    public void errorIsAnEvent() throws Exception {
+        try {
+            read("{\"stream\":\"Step 1\\n\"}\n{\"errorDetail\":{\"message\":\"failed\"},\"error\":\"failed\"}");
+            fail();
+        } catch (OrchestrationException e) {
+            assertEquals("failed", e.getMessage());
+        }
+
+        assertEquals(2, events.size());
+        assertEquals(ProgressEvent.Type.ERROR, events.get(1).getType());
+    }
+
+    @Test
+    public void messagesNeedNotBeOnTheirOwnLines() throws Exception {
+        read("{\"stream\":\"Step 1\\n\"}{\"status\":\"Pulling\"}\n{\"stream\":\n\"Step 2\\n\"}");
+
+        assertEquals(3, events.size());
+        assertEquals(ProgressEvent.Type.STATUS, events.get(1).getType());
+        assertEquals("Step 2\n", events.get(2).getText());
+    }
+
+    @Test
+    public void streamIsLeftOpen() throws Exception {
+        final boolean[] closed = {false};
+        stream.read(new ByteArrayInputStream("{\"status\":\"Pushed\"}".getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        });
+
+        assertFalse(closed[0]);
+    }
+
+    private String read(String output) throws Exception {
+        return stream.read(new ByteArrayInputStream(output.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -21,6 +21,7 @@ import static org.hamcrest.CoreMatchers.hasItems;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 
 @RunWith(Parameterized.class)
@@ -50,6 +51,11 @@ public class RepoTest {
         assertEquals(Arrays.asList(filterId, appId), sut.ids(false));
     }
 
+    @Test
+    public void unlinkedIdsShareALevel() throws Exception {
+        assertEquals(Collections.singletonList(Arrays.asList(filterId, appId)), sut.levels(false));
+    }
+
     @Test
     public void testSingleDependencies() throws Exception {
         final Map<Id, List<Id>> links = new HashMap<>();
@@ -100,6 +106,19 @@ public class RepoTest {
         sut.sort(links);
     }
 
+    @Test
+    public void circularLinksOnlyFailWhenTheOrderIsNeeded() throws Exception {
+        final Repo circular = new Repo("test", "test", new File("src/test/docker-repo-circular"), new Properties());
+
+        assertNotNull(circular.conf(new Id("a")));
+        try {
+            circular.ids(false);
+            fail();
+        } catch (IllegalStateException expected) {
+            // the links are only sorted once needed, e.g. not to clean
+        }
+    }
+
     @Test
     public void appHasPacking() throws Exception {
         Conf conf = sut.conf(appId);
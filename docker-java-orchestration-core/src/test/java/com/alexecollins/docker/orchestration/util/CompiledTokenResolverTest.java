@@ -0,0 +1,60 @@
+package com.alexecollins.docker.orchestration.util;
+
+import org.junit.Test;
+
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class CompiledTokenResolverTest {
+
+    private final Properties properties = properties();
+    private final CompiledTokenResolver resolver = new CompiledTokenResolver(properties);
+
+    private static Properties properties() {
+        final Properties properties = new Properties();
+        properties.setProperty("a", "1");
+        properties.setProperty("empty", "");
+        properties.put("number", 2);
+        return properties;
+    }
+
+    @Test
+    public void resolvesProperties() {
+        assertEquals("1", resolver.resolveToken("a"));
+        assertEquals("", resolver.resolveToken("empty"));
+        assertEquals("2", resolver.resolveToken("number"));
+        assertNull(resolver.resolveToken("b"));
+    }
+
+    @Test
+    public void resolvesARangeOfChars() {
+        final char[] chars = "x${a}y".toCharArray();
+
+        assertEquals("1", resolver.resolveToken(chars, 3, 1));
+        assertNull(resolver.resolveToken(chars, 2, 3));
+    }
+
+    @Test
+    public void isASnapshot() {
+        properties.setProperty("b", "2");
+
+        assertNull(resolver.resolveToken("b"));
+    }
+
+    @Test
+    public void defaultIsUsedIfThereIsNoProperty() {
+        assertEquals("1", resolver.resolveToken("a:-x"));
+        assertEquals("x", resolver.resolveToken("b:-x"));
+        assertEquals("x", resolver.resolveToken("empty:-x"));
+        assertEquals("", resolver.resolveToken("b:-"));
+        assertEquals("y:-z", resolver.resolveToken("b:-y:-z"));
+    }
+
+    @Test
+    public void defaultsAreCached() {
+        assertSame(resolver.resolveToken("b:-default"), resolver.resolveToken("c:-default"));
+    }
+}
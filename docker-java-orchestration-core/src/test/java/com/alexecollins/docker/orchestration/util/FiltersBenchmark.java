@@ -0,0 +1,109 @@
+package com.alexecollins.docker.orchestration.util;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares filtering a file through {@link FileReader} and {@link FileWriter}, as {@link Filters} used to, with
+ * {@link TextFiles} reading through a channel, and with the file memory mapped.
+ * <p/>
+ * Run with <code>mvn test-compile exec:java -Dexec.mainClass=...FiltersBenchmark
+ * -Dexec.classpathScope=test</code>, or from an IDE.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FiltersBenchmark {
+
+    private static final String LINE = "ENV SOME_SETTING some fairly ordinary text for ${project.version} here\n";
+
+    @Param({"1", "100"})
+    public int megabytes;
+
+    private final TextFiles channel = TextFiles.UTF_8;
+    private final TextFiles mapped = new TextFiles(StandardCharsets.UTF_8, 0);
+    private File dir;
+    private File in;
+    private File out;
+    private TokenResolver resolver;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(FiltersBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("filters-benchmark").toFile();
+        in = new File(dir, "in.txt");
+        out = new File(dir, "out.txt");
+
+        final int size = megabytes * 1024 * 1024;
+        final StringBuilder text = new StringBuilder(size + LINE.length());
+        while (text.length() < size) {
+            text.append(LINE);
+        }
+        Files.write(in.toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+
+        final Properties properties = new Properties();
+        properties.setProperty("project.version", "1.0.0-SNAPSHOT");
+        resolver = new PropertiesTokenResolver(properties);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Benchmark
+    public long readerWriter() throws IOException {
+        return filter(new BufferedReader(new FileReader(in)), new FileWriter(out));
+    }
+
+    @Benchmark
+    public long channel() throws IOException {
+        return filter(channel.reader(in), channel.writer(out));
+    }
+
+    @Benchmark
+    public long mapped() throws IOException {
+        return filter(mapped.reader(in), mapped.writer(out));
+    }
+
+    private long filter(Reader reader, Writer writer) throws IOException {
+        try (Reader in = new TokenReplacingReader(reader, resolver)) {
+            try (Writer out = writer) {
+                return IOUtils.copyLarge(in, out);
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.alexecollins.docker.orchestration.util;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.junit.Before;
 import org.junit.Test;
@@ -11,9 +12,19 @@ import java.io.IOException;
 import java.util.Properties;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class FiltersTest {
 
+    private static final FileFilter ACCEPT_ALL = new FileFilter() {
+        @Override
+        public boolean accept(File pathname) {
+            return true;
+        }
+    };
+
     private File dir;
     private String fileUnix;
     private String fileWindows;
@@ -52,6 +63,97 @@ public class FiltersTest {
         assertEquals("test 1.0.0\r\n", IOUtils.toString(new File(dir, fileWindows).toURI()));
     }
 
+    @Test
+    public void filesWithoutTokensAreNotRewritten() throws Exception {
+        final File dir = emptyDir("target/test/filters-skipped");
+        final File file = new File(dir, "plain.txt");
+        writeFile(file, "no tokens here, $ or {}\n");
+        assert file.setLastModified(1000000000000L);
+        final File unresolved = new File(dir, "unresolved.txt");
+        writeFile(unresolved, "test ${unknown}\n");
+        assert unresolved.setLastModified(1000000000000L);
+
+        final FilterStats stats = Filters.filterWithStats(dir, ACCEPT_ALL, properties);
+
+        assertEquals(1000000000000L, file.lastModified());
+        assertEquals(1000000000000L, unresolved.lastModified());
+        assertEquals("test ${unknown}\n", IOUtils.toString(unresolved.toURI()));
+        assertFalse(new File(dir, "unresolved.txt.tmp").exists());
+        assertEquals(0, stats.getFiles());
+        assertEquals(2, stats.getSkipped());
+    }
+
+    @Test
+    public void tokenIsFoundAcrossBuffers() throws Exception {
+        final File dir = emptyDir("target/test/filters-buffers");
+        final File file = new File(dir, "long.txt");
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 8191; i++) {
+            text.append('x');
+        }
+        writeFile(file, text.append("${project.version}").toString());
+
+        assertTrue(Filters.containsToken(file));
+        writeFile(file, text.append("$").toString().replace("${", "$"));
+        assertFalse(Filters.containsToken(file));
+    }
+
+    @Test
+    public void parallelFilterFiltersEveryFile() throws Exception {
+        final File dir = emptyDir("target/test/filters-parallel");
+        for (int i = 0; i < 20; i++) {
+            final File sub = new File(dir, "sub" + i);
+            assert sub.mkdir();
+            writeFile(new File(sub, "a.txt"), "test ${project.version}\n");
+            writeFile(new File(sub, "b.txt"), "test\n");
+        }
+
+        final FilterStats stats = Filters.filter(dir, ACCEPT_ALL, new CompiledTokenResolver(properties), TextFiles.UTF_8, 4);
+
+        assertEquals(20, stats.getFiles());
+        assertEquals(20, stats.getSkipped());
+        for (int i = 0; i < 20; i++) {
+            assertEquals("test 1.0.0\n", IOUtils.toString(new File(dir, "sub" + i + "/a.txt").toURI()));
+        }
+    }
+
+    @Test
+    public void parallelFilterReportsTheFirstFailureByPath() throws Exception {
+        final File dir = emptyDir("target/test/filters-failures");
+        for (String name : new String[]{"c.txt", "a.txt", "b.txt"}) {
+            writeFile(new File(dir, name), "test ${project.version}\n");
+        }
+        // the temporary files cannot be written
+        assert new File(dir, "c.txt.tmp").mkdir();
+        assert new File(dir, "a.txt.tmp").mkdir();
+
+        try {
+            Filters.filter(dir, ACCEPT_ALL, new CompiledTokenResolver(properties), TextFiles.UTF_8, 4);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().endsWith("a.txt"));
+            assertEquals(1, e.getSuppressed().length);
+        }
+        assertEquals("test 1.0.0\n", IOUtils.toString(new File(dir, "b.txt").toURI()));
+    }
+
+    @Test
+    public void copyFiltersIntoTheDestinationOnly() throws Exception {
+        final File src = emptyDir("target/test/filters-copy-src");
+        writeFile(new File(src, "a.txt"), "test ${project.version}\n");
+        writeFile(new File(src, "b.txt"), "test\n");
+        assert new File(src, "b.txt").setLastModified(1000000000000L);
+        final File dest = new File(emptyDir("target/test/filters-copy-dest"), "src");
+
+        final FilterStats stats = Filters.copy(src, dest, ACCEPT_ALL, ACCEPT_ALL, new CompiledTokenResolver(properties), TextFiles.UTF_8);
+
+        assertEquals("test 1.0.0\n", IOUtils.toString(new File(dest, "a.txt").toURI()));
+        assertEquals("test ${project.version}\n", IOUtils.toString(new File(src, "a.txt").toURI()));
+        assertEquals(1000000000000L, new File(dest, "b.txt").lastModified());
+        assertEquals(1, stats.getFiles());
+        assertEquals(1, stats.getSkipped());
+    }
+
     @Test
     public void testMaxLength() throws Exception {
         final Properties p = new Properties();
@@ -62,6 +164,13 @@ public class FiltersTest {
 
     }
 
+    private File emptyDir(String path) throws IOException {
+        final File dir = new File(path);
+        FileUtils.deleteDirectory(dir);
+        assert dir.mkdirs();
+        return dir;
+    }
+
     private void writeFile(File file, String data) throws IOException {
         FileWriter out = new FileWriter(file);
         try {
@@ -4,6 +4,8 @@ import org.junit.Test;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -39,4 +41,40 @@ public class TextFileFilterTest {
 
         assertFalse(TextFileFilter.INSTANCE.accept(f));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void extensionsCanBeSet() throws Exception {
+        final TextFileFilter filter = new TextFileFilter(Arrays.asList("md", "j2"), false);
+
+        assertTrue(filter.accept(file("test.md", "text")));
+        assertTrue(filter.accept(file("test.j2", "text")));
+        assertTrue(filter.accept(file("Dockerfile", "FROM busybox")));
+        assertFalse(filter.accept(file("test.txt", "text")));
+        assertFalse(filter.accept(file("testmd", "text")));
+    }
+
+    @Test
+    public void sniffingAcceptsTextWithOtherExtensions() throws Exception {
+        final TextFileFilter filter = new TextFileFilter(TextFileFilter.DEFAULT_EXTENSIONS, true);
+
+        assertTrue(filter.accept(file("test.html", "<p>${a}</p>")));
+        assertFalse(filter.accept(file("test.dat", "\u0000\u0001")));
+        assertFalse(filter.accept(file("test.jar", "text")));
+    }
+
+    @Test
+    public void sniffingRejectsBinariesWithTextExtensions() throws Exception {
+        final TextFileFilter filter = new TextFileFilter(TextFileFilter.DEFAULT_EXTENSIONS, true);
+
+        assertTrue(filter.accept(file("test.txt", "${a}")));
+        assertFalse(filter.accept(file("test.txt", "PK\u0003\u0004\u0000")));
+    }
+
+    private File file(String name, String content) throws Exception {
+        final File f = new File(dir, name);
+        try (FileOutputStream out = new FileOutputStream(f)) {
+            out.write(content.getBytes(StandardCharsets.ISO_8859_1));
+        }
+        return f;
+    }
+}
@@ -0,0 +1,59 @@
+package com.alexecollins.docker.orchestration.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TextFilesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsAndWritesInTheGivenCharset() throws Exception {
+        final File file = folder.newFile("text");
+        final TextFiles latin1 = new TextFiles(StandardCharsets.ISO_8859_1, Long.MAX_VALUE);
+
+        latin1.write(file, "caf\u00e9");
+
+        assertArrayEquals(new byte[]{'c', 'a', 'f', (byte) 0xe9}, Files.readAllBytes(file.toPath()));
+        assertEquals("caf\u00e9", latin1.read(file));
+    }
+
+    @Test
+    public void readsCharactersSplitAcrossBuffers() throws Exception {
+        final File file = folder.newFile("text");
+        final StringBuilder text = new StringBuilder();
+        while (text.length() < 200 * 1024) {
+            text.append("\u00e9\u20ac\ud83d\ude00 ${a}\n");
+        }
+        Files.write(file.toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(text.toString(), TextFiles.UTF_8.read(file));
+        assertEquals(text.toString(), new TextFiles(StandardCharsets.UTF_8, 0).read(file));
+    }
+
+    @Test
+    public void readsEmptyFiles() throws Exception {
+        final File file = folder.newFile("text");
+
+        assertEquals("", TextFiles.UTF_8.read(file));
+        assertEquals("", new TextFiles(StandardCharsets.UTF_8, 0).read(file));
+    }
+
+    @Test
+    public void tokensCanBeScannedForInAsciiCompatibleCharsets() {
+        assertTrue(TextFiles.UTF_8.hasAsciiTokens());
+        assertTrue(new TextFiles(StandardCharsets.ISO_8859_1, 0).hasAsciiTokens());
+        assertFalse(new TextFiles(StandardCharsets.UTF_16, 0).hasAsciiTokens());
+    }
+}
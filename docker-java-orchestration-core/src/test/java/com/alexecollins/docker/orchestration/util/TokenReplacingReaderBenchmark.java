@@ -0,0 +1,92 @@
+package com.alexecollins.docker.orchestration.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link TokenReplacingReader} with the character at a time {@link PushbackTokenReplacingReader}, filtering
+ * text with a token on every line, as a Dockerfile or config file has, and {@link PropertiesTokenResolver} with
+ * {@link CompiledTokenResolver}.
+ * <p/>
+ * Run with <code>mvn test-compile exec:java -Dexec.mainClass=...TokenReplacingReaderBenchmark
+ * -Dexec.classpathScope=test</code>, or from an IDE.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class TokenReplacingReaderBenchmark {
+
+    private static final String LINE = "ENV SOME_SETTING some fairly ordinary text for ${project.version} here\n";
+
+    @Param({"1", "100"})
+    public int megabytes;
+
+    private final char[] out = new char[8192];
+    private char[] input;
+    private TokenResolver resolver;
+    private TokenResolver compiled;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(TokenReplacingReaderBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @Setup
+    public void setUp() {
+        final int size = megabytes * 1024 * 1024;
+        final StringBuilder text = new StringBuilder(size + LINE.length());
+        while (text.length() < size) {
+            text.append(LINE);
+        }
+        input = text.toString().toCharArray();
+
+        final Properties properties = new Properties();
+        properties.setProperty("project.version", "1.0.0-SNAPSHOT");
+        resolver = new PropertiesTokenResolver(properties);
+        compiled = new CompiledTokenResolver(properties);
+    }
+
+    @Benchmark
+    public long block() throws IOException {
+        return drain(new TokenReplacingReader(new CharArrayReader(input), resolver));
+    }
+
+    @Benchmark
+    public long compiled() throws IOException {
+        return drain(new TokenReplacingReader(new CharArrayReader(input), compiled));
+    }
+
+    @Benchmark
+    public long pushback() throws IOException {
+        return drain(new PushbackTokenReplacingReader(new CharArrayReader(input), resolver));
+    }
+
+    private long drain(Reader reader) throws IOException {
+        long total = 0;
+        int n;
+        while ((n = reader.read(out)) != -1) {
+            total += n;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,106 @@
+package com.alexecollins.docker.orchestration.util;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.CharBuffer;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+
+public class TokenReplacingReaderTest {
+
+    private final TokenResolver resolver = new PropertiesTokenResolver(properties());
+
+    private static Properties properties() {
+        final Properties properties = new Properties();
+        properties.setProperty("a", "1");
+        properties.setProperty("long", "a value longer than its token");
+        properties.setProperty("empty", "");
+        properties.setProperty("token", "${a}");
+        return properties;
+    }
+
+    @Test
+    public void sameAsBaseline() throws Exception {
+        for (String in : new String[]{
+                "", "a", "${a}", "x${a}y", "$$x", "$${a}", "$x", "{a}", "${b}", "${empty}", "${empty}x",
+                "${long}${long}", "${token}", "${a${a}}", "a $ b ${ a } c", "${a}\r\n${a}\n"}) {
+            assertEquals(in, filter(new PushbackTokenReplacingReader(new StringReader(in), resolver)), filter(in));
+        }
+    }
+
+    @Test
+    public void sameAsBaselineAcrossBufferBoundaries() throws Exception {
+        final StringBuilder in = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            in.append("line ").append(i).append(" ${a} $ ${b} ${long}\n");
+        }
+
+        assertEquals(filter(new PushbackTokenReplacingReader(new StringReader(in.toString()), resolver)), filter(in.toString()));
+    }
+
+    @Test
+    public void compiledResolverGivesTheSameResult() throws Exception {
+        final StringBuilder in = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            in.append("line ").append(i).append(" ${a} $ ${b} ${long}\n");
+        }
+        final TokenResolver compiled = new CompiledTokenResolver(properties());
+
+        assertEquals(filter(in.toString()), filter(new TokenReplacingReader(new StringReader(in.toString()), compiled)));
+    }
+
+    /**
+     * The baseline reads past the end here, and loops forever or returns a junk char.
+     */
+    @Test
+    public void unclosedTokenIsLeftAsItIs() throws Exception {
+        assertEquals("x ${a", filter("x ${a"));
+        assertEquals("${", filter("${"));
+        assertEquals("x $", filter("x $"));
+    }
+
+    @Test
+    public void readsIntoCharBuffer() throws Exception {
+        final CharBuffer out = CharBuffer.allocate(64);
+
+        try (Reader reader = new TokenReplacingReader(new StringReader("x${a}y"), resolver)) {
+            while (reader.read(out) != -1) {
+                assertEquals(true, out.hasRemaining());
+            }
+        }
+
+        out.flip();
+        assertEquals("x1y", out.toString());
+    }
+
+    @Test
+    public void readsOneCharAtATime() throws Exception {
+        final StringBuilder out = new StringBuilder();
+
+        try (Reader reader = new TokenReplacingReader(new StringReader("x${a}${empty}y"), resolver)) {
+            int c;
+            while ((c = reader.read()) != -1) {
+                out.append((char) c);
+            }
+        }
+
+        assertEquals("x1y", out.toString());
+    }
+
+    private String filter(String in) throws IOException {
+        return filter(new TokenReplacingReader(new StringReader(in), resolver));
+    }
+
+    private static String filter(Reader reader) throws IOException {
+        try {
+            return IOUtils.toString(reader);
+        } finally {
+            reader.close();
+        }
+    }
+}